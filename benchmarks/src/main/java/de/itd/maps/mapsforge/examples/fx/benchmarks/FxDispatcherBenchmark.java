@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2013 Michael Watzko and IT-Designers GmbH.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.itd.maps.mapsforge.examples.fx.benchmarks;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import javafx.application.Platform;
+
+import org.apache.log4j.Logger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.itd.maps.mapsforge.examples.fx.dispatch.FxDispatcher;
+import de.itd.maps.mapsforge.examples.fx.metrics.Metrics;
+import de.itd.maps.mapsforge.examples.fx.metrics.MetricsSnapshot;
+
+/**
+ * Measures four threads posting "update car X" tasks for random cars to the
+ * FX-Thread, with the {@link FxDispatcher} and with {@link Platform#runLater(Runnable)}.
+ * The amount of tasks still pending after each trial is logged, the
+ * queue of {@link Platform#runLater(Runnable)} grows without limit.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Threads(4)
+@Fork(1)
+public class FxDispatcherBenchmark {
+
+	private static final int CARS = 10000;
+
+	@Param({"DROP_OLDEST", "BLOCK", "MERGE"})
+	private FxDispatcher.Overflow overflow;
+
+	private final Logger	logger	= Logger.getLogger(getClass());
+	private FxDispatcher	dispatcher;
+	private Integer[]		keys;
+	private long			updates;
+
+	private final Runnable update = new Runnable() {
+		@Override
+		public void run() {
+			// only touched by the FX-Thread
+			updates++;
+		}
+	};
+
+	@Setup
+	public void setup () {
+		FxPlatform.startup();
+
+		dispatcher	= new FxDispatcher(FxDispatcher.DEFAULT_CAPACITY, overflow);
+		keys		= new Integer[CARS];
+
+		for (int i = 0; i < CARS; i++) {
+			keys[i] = i;
+		}
+	}
+
+	@TearDown
+	public void tearDown () {
+		// each trial runs in its own fork, so the counters are those of this trial
+		MetricsSnapshot metrics = Metrics.getInstance().snapshot();
+
+		logger.info("pending="+dispatcher.getPendingCount()
+				+", coalesced="	+metrics.getCounter(Metrics.FX_DISPATCH_COALESCED)
+				+", dropped="	+metrics.getCounter(Metrics.FX_DISPATCH_DROPPED)
+				+", merged="	+metrics.getCounter(Metrics.FX_DISPATCH_MERGED)
+				+", blocked="	+metrics.getCounter(Metrics.FX_DISPATCH_BLOCKED)
+				+", updates="	+updates);
+	}
+
+	@Benchmark
+	public void dispatch () {
+		dispatcher.dispatch(keys[ThreadLocalRandom.current().nextInt(CARS)], update);
+	}
+
+	@Benchmark
+	public void runLater () {
+		Platform.runLater(update);
+	}
+}
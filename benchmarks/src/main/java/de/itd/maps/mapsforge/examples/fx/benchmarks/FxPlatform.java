@@ -0,0 +1,162 @@
+/*
+ * Copyright (c) 2013 Michael Watzko and IT-Designers GmbH.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.itd.maps.mapsforge.examples.fx.benchmarks;
+
+import java.io.File;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+import javafx.application.Platform;
+import javafx.scene.Group;
+import javafx.scene.Node;
+import javafx.scene.Scene;
+import javafx.stage.Stage;
+
+import com.sun.javafx.application.PlatformImpl;
+
+/**
+ * Starts the JavaFX toolkit on the headless Monocle glass
+ * platform and runs code on the FX-Thread for the benchmarks
+ */
+public final class FxPlatform {
+
+	public static final int WIDTH	= 800;
+	public static final int HEIGHT	= 600;
+
+	private static boolean started = false;
+
+	private FxPlatform () {
+
+	}
+
+	/**
+	 * Starts the JavaFX toolkit, if it has not been started yet.
+	 * Unless specified otherwise, the headless Monocle glass
+	 * platform and the software pipeline are used.
+	 */
+	public static synchronized void startup () {
+		if (started) {
+			return;
+		}
+
+		setDefault("glass.platform",		"Monocle");
+		setDefault("monocle.platform",		"Headless");
+		setDefault("prism.order",			"sw");
+		setDefault("prism.text",			"t2k");
+		setDefault("java.awt.headless",		"true");
+
+		final CountDownLatch latch = new CountDownLatch(1);
+
+		PlatformImpl.startup(new Runnable() {
+			@Override
+			public void run() {
+				latch.countDown();
+			}
+		});
+
+		try {
+			latch.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while starting the FX-Thread", e);
+		}
+
+		Platform.setImplicitExit(false);
+		started = true;
+	}
+
+	/**
+	 * Runs the given {@link Runnable} on the FX-Thread and waits for it
+	 * @param runnable	{@link Runnable} to run
+	 */
+	public static void runAndWait (final Runnable runnable) {
+		callAndWait(new Callable<Void>() {
+			@Override
+			public Void call() throws Exception {
+				runnable.run();
+				return null;
+			}
+		});
+	}
+
+	/**
+	 * Calls the given {@link Callable} on the FX-Thread and waits for its result
+	 * @param callable	{@link Callable} to call
+	 * @return The result of the {@link Callable}
+	 */
+	public static <T> T callAndWait (Callable<T> callable) {
+		if (Platform.isFxApplicationThread()) {
+			try {
+				return callable.call();
+			} catch (RuntimeException e) {
+				throw e;
+			} catch (Exception e) {
+				throw new IllegalStateException(e);
+			}
+		}
+
+		FutureTask<T> task = new FutureTask<T>(callable);
+		Platform.runLater(task);
+
+		try {
+			return task.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException(e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException)e.getCause();
+			}
+			throw new IllegalStateException(e.getCause());
+		}
+	}
+
+	/**
+	 * Shows the given {@link Node} in a {@link Stage} of
+	 * {@link #WIDTH} x {@link #HEIGHT}, needs to be called by the FX-Thread
+	 * @param node	{@link Node} to show
+	 * @return The shown {@link Stage}
+	 */
+	public static Stage show (Node node) {
+		Stage stage = new Stage();
+		stage.setScene(new Scene(new Group(node), WIDTH, HEIGHT));
+		stage.show();
+		return stage;
+	}
+
+	/**
+	 * @return The map file given by the system property "benchmark.map"
+	 */
+	public static File getMapFile () {
+		File file = new File(System.getProperty("benchmark.map", "maps/stuttgart_with_lanes.map"));
+
+		if (!file.isFile()) {
+			throw new IllegalStateException("Map file not found, set it with -Dbenchmark.map=<file>: " + file.getAbsolutePath());
+		}
+
+		return file;
+	}
+
+	private static void setDefault (String key, String value) {
+		if (System.getProperty(key) == null) {
+			System.setProperty(key, value);
+		}
+	}
+}
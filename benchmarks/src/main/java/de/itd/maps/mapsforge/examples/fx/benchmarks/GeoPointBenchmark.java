@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2013 Michael Watzko and IT-Designers GmbH.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.itd.maps.mapsforge.examples.fx.benchmarks;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+import org.mapsforge.core.model.GeoPoint;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.itd.maps.mapsforge.MapsforgeMap;
+
+/**
+ * Measures the pixel to geo conversion of {@link MapsforgeMap#getGeoPoint(double, double)}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class GeoPointBenchmark {
+
+	private MapsforgeMap	map;
+	private double			x;
+	private double			y;
+
+	@Setup
+	public void setup () {
+		FxPlatform.startup();
+
+		map = FxPlatform.callAndWait(new Callable<MapsforgeMap>() {
+			@Override
+			public MapsforgeMap call() throws Exception {
+				MapsforgeMap map = new MapsforgeMap();
+				FxPlatform.show(map);
+				return map;
+			}
+		});
+	}
+
+	@TearDown
+	public void tearDown () {
+		FxPlatform.runAndWait(new Runnable() {
+			@Override
+			public void run() {
+				map.destroy();
+			}
+		});
+	}
+
+	@Benchmark
+	public GeoPoint getGeoPoint () {
+		// walk over the whole viewport, to not convert the same pixel all the time
+		x = x >= FxPlatform.WIDTH  ? 0 : x + 1;
+		y = y >= FxPlatform.HEIGHT ? 0 : y + 0.75;
+
+		return map.getGeoPoint(x, y);
+	}
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright (c) 2013 Michael Watzko and IT-Designers GmbH.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.itd.maps.mapsforge.examples.fx.benchmarks;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares random block reads of the map file through one shared
+ * {@link RandomAccessFile}, as done by the map database of mapsforge,
+ * with reads through the per thread views of a {@link MappedMapFile}.
+ * Run with different thread counts (-t) to see how both scale.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Threads(4)
+@Fork(1)
+public class MapFileReadBenchmark {
+
+	@Param({"4096", "65536"})
+	private int blockSize;
+
+	private RandomAccessFile	file;
+	private MappedMapFile		mapped;
+	private long				length;
+
+	@Setup
+	public void setup () throws IOException {
+		file	= new RandomAccessFile(FxPlatform.getMapFile(), "r");
+		mapped	= new MappedMapFile(FxPlatform.getMapFile());
+		length	= mapped.length();
+	}
+
+	@TearDown
+	public void tearDown () throws IOException {
+		file.close();
+	}
+
+	@Benchmark
+	public byte randomAccessFile (Reader reader) throws IOException {
+		long position = reader.nextPosition(length - blockSize);
+
+		synchronized (file) {
+			file.seek(position);
+			file.readFully(reader.buffer, 0, blockSize);
+		}
+
+		return reader.buffer[0];
+	}
+
+	@Benchmark
+	public byte mappedFile (Reader reader) {
+		mapped.read(reader.nextPosition(length - blockSize), reader.buffer, 0, blockSize);
+		return reader.buffer[0];
+	}
+
+	/**
+	 * Buffer and random positions of a single thread
+	 */
+	@State(Scope.Thread)
+	public static class Reader {
+		private final Random	random = new Random(42);
+		private byte[]			buffer;
+
+		@Setup
+		public void setup (MapFileReadBenchmark benchmark) {
+			buffer = new byte[benchmark.blockSize];
+		}
+
+		private long nextPosition (long max) {
+			return (long)(random.nextDouble() * Math.max(0, max));
+		}
+	}
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 2013 Michael Watzko and IT-Designers GmbH.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.itd.maps.mapsforge.examples.fx.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.itd.c2x.system.mmi.container.gpsposition.Car;
+import de.itd.maps.mapsforge.MapItem;
+import de.itd.maps.mapsforge.MapsforgeMap;
+import de.itd.maps.mapsforge.examples.fx.map.MapItemBatch;
+import de.itd.maps.mapsforge.examples.fx.map.MapItemIndex;
+
+/**
+ * Measures adding and removing {@link Car}s to and from a {@link MapsforgeMap},
+ * one by one and as {@link MapItemBatch}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class MapItemBenchmark {
+
+	@Param({"100", "1000", "10000"})
+	private int count;
+
+	private MapsforgeMap	map;
+	private MapItemIndex	index;
+	private MapItemBatch	batch;
+	private List<MapItem>	items;
+
+	@Setup
+	public void setup () {
+		FxPlatform.startup();
+
+		items = new ArrayList<>(count);
+		map = FxPlatform.callAndWait(new Callable<MapsforgeMap>() {
+			@Override
+			public MapsforgeMap call() throws Exception {
+				for (int i = 0; i < count; i++) {
+					items.add(new Car(48.71, 9.36 + (i * .0001), "i=" + i));
+				}
+				return new MapsforgeMap();
+			}
+		});
+
+		index = new MapItemIndex(map);
+		batch = new MapItemBatch(map, index);
+	}
+
+	@TearDown
+	public void tearDown () {
+		FxPlatform.runAndWait(new Runnable() {
+			@Override
+			public void run() {
+				map.destroy();
+			}
+		});
+	}
+
+	@Benchmark
+	public void addAndRemove () {
+		FxPlatform.runAndWait(new Runnable() {
+			@Override
+			public void run() {
+				for (MapItem item : items) {
+					map.addMapItem(item);
+				}
+				for (MapItem item : items) {
+					map.removeMapItem(item);
+				}
+			}
+		});
+	}
+
+	@Benchmark
+	public void addAndRemoveIndexed () {
+		FxPlatform.runAndWait(new Runnable() {
+			@Override
+			public void run() {
+				for (MapItem item : items) {
+					map.addMapItem(item);
+					index.add(item);
+				}
+				for (MapItem item : items) {
+					index.remove(item);
+					map.removeMapItem(item);
+				}
+			}
+		});
+	}
+
+	@Benchmark
+	public void addAllAndRemoveAll () throws InterruptedException, ExecutionException {
+		batch.addAll(items).get();
+		batch.removeAll(items).get();
+	}
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright (c) 2013 Michael Watzko and IT-Designers GmbH.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.itd.maps.mapsforge.examples.fx.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+
+/**
+ * Read-only memory mapping of a map file, that is mapped once and shared
+ * by any amount of threads. Mapsforge reads map files through a
+ * RandomAccessFile, the mapping is only compared to that in the
+ * {@link MapFileReadBenchmark}.
+ *
+ * Each thread reads through its own zero-copy views of the mapping, so
+ * there is neither a shared file position nor a file handle to lock.
+ * Files larger than {@link #SEGMENT_SIZE} are mapped in several segments.
+ * The mapping is released by the garbage collector, once neither this
+ * instance nor one of its views is referenced anymore.
+ */
+public class MappedMapFile {
+
+	public static final int SEGMENT_SIZE = 1 << 30;
+
+	private final File					file;
+	private final long					length;
+	private final MappedByteBuffer[]	segments;
+
+	private final ThreadLocal<ByteBuffer[]> views = new ThreadLocal<ByteBuffer[]>() {
+		@Override
+		protected ByteBuffer[] initialValue() {
+			ByteBuffer[] views = new ByteBuffer[segments.length];
+			for (int i = 0; i < views.length; i++) {
+				views[i] = segments[i].duplicate();
+			}
+			return views;
+		}
+	};
+
+	/**
+	 * Maps the given file
+	 *
+	 * @param file	Map file to map
+	 * @throws IOException If the file could not be mapped
+	 */
+	public MappedMapFile (File file) throws IOException {
+		this.file = file;
+
+		RandomAccessFile	raf		= new RandomAccessFile(file, "r");
+		FileChannel			channel	= raf.getChannel();
+
+		try {
+			this.length		= channel.size();
+			this.segments	= new MappedByteBuffer[(int)((length + SEGMENT_SIZE - 1) / SEGMENT_SIZE)];
+
+			for (int i = 0; i < segments.length; i++) {
+				long position	= (long)i * SEGMENT_SIZE;
+				segments[i]		= channel.map(MapMode.READ_ONLY, position, Math.min(SEGMENT_SIZE, length - position));
+			}
+		} finally {
+			// the mapping stays valid after the channel has been closed
+			raf.close();
+		}
+	}
+
+	/**
+	 * @return The mapped file
+	 */
+	public File getFile () {
+		return file;
+	}
+
+	/**
+	 * @return The length of the file in bytes
+	 */
+	public long length () {
+		return length;
+	}
+
+	/**
+	 * Reads bytes of the file into the given array, can be called by any thread
+	 *
+	 * @param position	Position in the file to read from
+	 * @param buffer	Array to read into
+	 * @param offset	Offset in the array
+	 * @param count		Amount of bytes to read
+	 * @return The amount of bytes read, less than requested at the end of the file
+	 */
+	public int read (long position, byte[] buffer, int offset, int count) {
+		ByteBuffer[]	views	= this.views.get();
+		int				read	= 0;
+
+		while (read < count && position < length) {
+			ByteBuffer	view	= views[(int)(position / SEGMENT_SIZE)];
+			int			start	= (int)(position % SEGMENT_SIZE);
+			int			chunk	= Math.min(count - read, view.capacity() - start);
+
+			view.position(start);
+			view.get(buffer, offset + read, chunk);
+
+			read		+= chunk;
+			position	+= chunk;
+		}
+
+		return read;
+	}
+
+	/**
+	 * Returns a view of the given segment for the calling thread,
+	 * its position and limit may be changed by the calling thread
+	 *
+	 * @param segment	Index of the segment
+	 * @return The view of the segment
+	 */
+	public ByteBuffer getView (int segment) {
+		return views.get()[segment];
+	}
+
+	/**
+	 * @return The amount of mapped segments
+	 */
+	public int getSegmentCount () {
+		return segments.length;
+	}
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright (c) 2013 Michael Watzko and IT-Designers GmbH.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.itd.maps.mapsforge.examples.fx.benchmarks;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+import javafx.scene.control.Label;
+
+import org.mapsforge.core.model.GeoPoint;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.itd.maps.mapsforge.MapsforgeMap;
+import de.itd.maps.mapsforge.examples.fx.controller.MouseReadout;
+
+/**
+ * Compares formatting the mouse position on each mouse move with
+ * {@link String#format(String, Object...)} to the {@link MouseReadout}.
+ * Run with "-prof gc" to see the allocations per operation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class MouseReadoutBenchmark {
+
+	private MapsforgeMap	map;
+	private MouseReadout	readout;
+	private Label			labelX;
+	private Label			labelY;
+	private Label			labelLatitude;
+	private Label			labelLongitude;
+	private double			x;
+
+	@Setup
+	public void setup () {
+		FxPlatform.startup();
+
+		map = FxPlatform.callAndWait(new Callable<MapsforgeMap>() {
+			@Override
+			public MapsforgeMap call() throws Exception {
+				MapsforgeMap map = new MapsforgeMap();
+				FxPlatform.show(map);
+				return map;
+			}
+		});
+
+		// not shown, so they can be set by the benchmark thread
+		labelX			= new Label();
+		labelY			= new Label();
+		labelLatitude	= new Label();
+		labelLongitude	= new Label();
+		readout			= new MouseReadout(map, labelX, labelY, labelLatitude, labelLongitude);
+	}
+
+	@TearDown
+	public void tearDown () {
+		FxPlatform.runAndWait(new Runnable() {
+			@Override
+			public void run() {
+				map.destroy();
+			}
+		});
+	}
+
+	/**
+	 * A mouse move as it was handled before the {@link MouseReadout}
+	 */
+	@Benchmark
+	public void format () {
+		double y = nextY();
+
+		labelX.setText(String.format("%.0f", x));
+		labelY.setText(String.format("%.0f", y));
+
+		GeoPoint position = map.getGeoPoint(x, y);
+
+		labelLatitude	.setText(String.format("%2.6f", position.latitude));
+		labelLongitude	.setText(String.format("%2.6f", position.longitude));
+	}
+
+	/**
+	 * A mouse move, that is shown with the next pulse
+	 */
+	@Benchmark
+	public void moved () {
+		readout.moved(x, nextY());
+	}
+
+	/**
+	 * A mouse move by less than a pixel and the pulse afterwards, no label changes
+	 */
+	@Benchmark
+	public MouseReadout movedAndUpdated () {
+		readout.moved(100, 100 + (x % 2) * 1e-9);
+		readout.update();
+		nextY();
+		return readout;
+	}
+
+	private double nextY () {
+		// walk along the viewport, to not format the same values all the time
+		x = x >= FxPlatform.WIDTH ? 0 : x + 1;
+		return x * FxPlatform.HEIGHT / FxPlatform.WIDTH;
+	}
+}
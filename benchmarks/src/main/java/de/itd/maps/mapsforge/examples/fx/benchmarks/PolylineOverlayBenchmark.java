@@ -0,0 +1,179 @@
+/*
+ * Copyright (c) 2013 Michael Watzko and IT-Designers GmbH.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.itd.maps.mapsforge.examples.fx.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.paint.Color;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.itd.maps.mapsforge.MapsforgeMap;
+import de.itd.maps.mapsforge.examples.fx.render.GeoPolyline;
+import de.itd.maps.mapsforge.examples.fx.render.MapViewport;
+import de.itd.maps.mapsforge.examples.fx.render.PolylineOverlay;
+
+/**
+ * Compares drawing the trails of a city's fleet with all of their points
+ * to the {@link PolylineOverlay}, which draws the simplified points of the
+ * zoom level within the viewport only. The viewport is centered on Stuttgart.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class PolylineOverlayBenchmark {
+
+	public static final double LATITUDE		= 48.7758;
+	public static final double LONGITUDE	= 9.1829;
+
+	@Param({"1000"})
+	private int		trails;
+
+	@Param({"1000"})
+	private int		points;
+
+	@Param({"11", "14", "17"})
+	private byte	zoom;
+
+	private MapsforgeMap	map;
+	private Overlay			overlay;
+	private MapViewport		viewport;
+	private double[][]		latitude;
+	private double[][]		longitude;
+
+	/**
+	 * Exposes the draw of the {@link PolylineOverlay} to the benchmark
+	 */
+	private static class Overlay extends PolylineOverlay {
+
+		Overlay (MapsforgeMap map) {
+			super(map);
+		}
+
+		void redraw (MapViewport viewport) {
+			draw(getGraphicsContext2D(), viewport);
+		}
+	}
+
+	@Setup
+	public void setup () {
+		FxPlatform.startup();
+
+		map = FxPlatform.callAndWait(new Callable<MapsforgeMap>() {
+			@Override
+			public MapsforgeMap call() throws Exception {
+				MapsforgeMap map = new MapsforgeMap();
+				FxPlatform.show(map);
+				return map;
+			}
+		});
+
+		// not shown, so it can be drawn by the benchmark thread
+		overlay = new Overlay(map);
+		overlay.setWidth (FxPlatform.WIDTH);
+		overlay.setHeight(FxPlatform.HEIGHT);
+
+		// random walks of about 5 meters per point around the center
+		Random random	= new Random(42);
+		latitude		= new double[trails][points];
+		longitude		= new double[trails][points];
+
+		for (int t = 0; t < trails; t++) {
+			double lat		= LATITUDE	+ (random.nextDouble() - 0.5) * 0.1;
+			double lon		= LONGITUDE	+ (random.nextDouble() - 0.5) * 0.15;
+			double heading	= random.nextDouble() * 2 * Math.PI;
+
+			for (int p = 0; p < points; p++) {
+				heading += (random.nextDouble() - 0.5) * 0.3;
+				lat		+= Math.cos(heading) * 0.000045;
+				lon		+= Math.sin(heading) * 0.000068;
+
+				latitude [t][p] = lat;
+				longitude[t][p] = lon;
+			}
+
+			overlay.add(new GeoPolyline(latitude[t], longitude[t], points), Color.hsb(t * 37 % 360, 0.8, 0.9));
+		}
+
+		double mapSize	= MapViewport.getMapSize(zoom);
+		viewport		= new MapViewport();
+		viewport.update(
+				MapViewport.longitudeToPixelX(LONGITUDE, mapSize),
+				MapViewport.latitudeToPixelY (LATITUDE,  mapSize),
+				zoom,
+				FxPlatform.WIDTH,
+				FxPlatform.HEIGHT
+				);
+	}
+
+	@TearDown
+	public void tearDown () {
+		FxPlatform.runAndWait(new Runnable() {
+			@Override
+			public void run() {
+				map.destroy();
+			}
+		});
+	}
+
+	/**
+	 * All points of all trails, as a {@link javafx.scene.shape.Polyline} per trail would be drawn
+	 */
+	@Benchmark
+	public GraphicsContext allPoints () {
+		GraphicsContext gc = overlay.getGraphicsContext2D();
+		gc.clearRect(0, 0, FxPlatform.WIDTH, FxPlatform.HEIGHT);
+
+		for (int t = 0; t < trails; t++) {
+			gc.beginPath();
+			gc.moveTo(viewport.toX(longitude[t][0]), viewport.toY(latitude[t][0]));
+
+			for (int p = 1; p < points; p++) {
+				gc.lineTo(viewport.toX(longitude[t][p]), viewport.toY(latitude[t][p]));
+			}
+
+			gc.stroke();
+		}
+
+		return gc;
+	}
+
+	@Benchmark
+	public int overlay () {
+		overlay.getGraphicsContext2D().clearRect(0, 0, FxPlatform.WIDTH, FxPlatform.HEIGHT);
+		overlay.redraw(viewport);
+		return overlay.getSegmentCount();
+	}
+}
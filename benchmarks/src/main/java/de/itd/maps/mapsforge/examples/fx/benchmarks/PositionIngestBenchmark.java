@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2013 Michael Watzko and IT-Designers GmbH.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.itd.maps.mapsforge.examples.fx.benchmarks;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.itd.c2x.system.mmi.container.gpsposition.Car;
+import de.itd.maps.mapsforge.examples.fx.movement.MovementEngine;
+import de.itd.maps.mapsforge.examples.fx.movement.PositionIngest;
+
+/**
+ * Measures the throughput of four threads offering samples to a
+ * {@link PositionIngest}, while a fifth thread drains it like the pulse
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class PositionIngestBenchmark {
+
+	private static final int CARS = 10000;
+
+	private PositionIngest	ingest;
+	private Car[]			cars;	// the engine only references them weakly
+
+	@Setup
+	public void setup () {
+		FxPlatform.startup();
+
+		cars = new Car[CARS];
+
+		ingest = FxPlatform.callAndWait(new Callable<PositionIngest>() {
+			@Override
+			public PositionIngest call() throws Exception {
+				PositionIngest ingest = new PositionIngest(new MovementEngine(1000));
+
+				for (int i = 0; i < CARS; i++) {
+					cars[i] = new Car(48.71, 9.36 + (i * .0001), "i=" + i);
+					ingest.register(cars[i]);
+				}
+				return ingest;
+			}
+		});
+	}
+
+	@Benchmark
+	@Group("ingest")
+	@GroupThreads(4)
+	public boolean offer () {
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		return ingest.offer(random.nextInt(CARS), 48.71, 9.36, random.nextDouble(360), System.nanoTime());
+	}
+
+	@Benchmark
+	@Group("ingest")
+	@GroupThreads(1)
+	public int drain () {
+		return ingest.drain();
+	}
+}
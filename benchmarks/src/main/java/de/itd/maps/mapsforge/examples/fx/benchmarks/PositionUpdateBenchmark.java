@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2013 Michael Watzko and IT-Designers GmbH.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.itd.maps.mapsforge.examples.fx.benchmarks;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.itd.c2x.system.mmi.container.gpsposition.Car;
+import de.itd.maps.mapsforge.MapItem;
+import de.itd.maps.mapsforge.MapsforgeMap;
+
+/**
+ * Measures moving N {@link Car}s on a shown {@link MapsforgeMap}
+ * by setting their latitude and longitude properties
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class PositionUpdateBenchmark {
+
+	@Param({"100", "1000", "10000"})
+	private int count;
+
+	private MapsforgeMap	map;
+	private MapItem[]		items;
+	private double			offset;
+
+	@Setup
+	public void setup () {
+		FxPlatform.startup();
+
+		items 	= new MapItem[count];
+		map		= FxPlatform.callAndWait(new Callable<MapsforgeMap>() {
+			@Override
+			public MapsforgeMap call() throws Exception {
+				MapsforgeMap map = new MapsforgeMap();
+				FxPlatform.show(map);
+
+				for (int i = 0; i < count; i++) {
+					items[i] = new Car(48.71, 9.36 + (i * .0001), "i=" + i);
+					map.addMapItem(items[i]);
+				}
+				return map;
+			}
+		});
+	}
+
+	@TearDown
+	public void tearDown () {
+		FxPlatform.runAndWait(new Runnable() {
+			@Override
+			public void run() {
+				map.destroy();
+			}
+		});
+	}
+
+	@Benchmark
+	public void updatePositions () {
+		offset = offset > 0.01 ? 0 : offset + 0.00001;
+
+		FxPlatform.runAndWait(new Runnable() {
+			@Override
+			public void run() {
+				for (MapItem item : items) {
+					item.latitudeProperty() .set(item.latitudeProperty() .get() + offset);
+					item.longitudeProperty().set(item.longitudeProperty().get() + offset);
+				}
+			}
+		});
+	}
+}
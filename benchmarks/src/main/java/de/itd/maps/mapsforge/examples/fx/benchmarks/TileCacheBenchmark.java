@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2013 Michael Watzko and IT-Designers GmbH.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.itd.maps.mapsforge.examples.fx.benchmarks;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.itd.maps.mapsforge.MapsforgeMap;
+
+/**
+ * Measures {@link MapsforgeMap#updateMap(boolean)} with a warm memory tile
+ * cache (hit) and with a cleared memory tile cache (miss) for different
+ * capacities. The map file is given by the system property "benchmark.map".
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class TileCacheBenchmark {
+
+	@Param({"16", "64", "256"})
+	private int capacity;
+
+	private MapsforgeMap map;
+
+	@Setup
+	public void setup () {
+		FxPlatform.startup();
+
+		map = FxPlatform.callAndWait(new Callable<MapsforgeMap>() {
+			@Override
+			public MapsforgeMap call() throws Exception {
+				MapsforgeMap map = new MapsforgeMap();
+				FxPlatform.show(map);
+
+				map.loadMap(FxPlatform.getMapFile());
+				map.useFileTileCacheProperty().set(false);
+				map.memoryTileCacheCapacity().set(capacity);
+				map.getMapView().setZoomLevel((byte)15);
+				map.getMapView().latitudeProperty() .set(48.71);
+				map.getMapView().longitudeProperty().set(9.36);
+				return map;
+			}
+		});
+	}
+
+	@TearDown
+	public void tearDown () {
+		FxPlatform.runAndWait(new Runnable() {
+			@Override
+			public void run() {
+				map.destroy();
+			}
+		});
+	}
+
+	@Benchmark
+	public void hit (final WarmCache cache) {
+		FxPlatform.runAndWait(new Runnable() {
+			@Override
+			public void run() {
+				map.updateMap(false);
+			}
+		});
+	}
+
+	@Benchmark
+	public void miss (final ColdCache cache) {
+		FxPlatform.runAndWait(new Runnable() {
+			@Override
+			public void run() {
+				map.updateMap(false);
+			}
+		});
+	}
+
+	/**
+	 * Renders the viewport once, so that all tiles are cached
+	 */
+	@State(Scope.Thread)
+	public static class WarmCache {
+		@Setup(Level.Iteration)
+		public void setup (final TileCacheBenchmark benchmark) {
+			FxPlatform.runAndWait(new Runnable() {
+				@Override
+				public void run() {
+					benchmark.map.updateMap(false);
+				}
+			});
+		}
+	}
+
+	/**
+	 * Clears the cache before each invocation
+	 */
+	@State(Scope.Thread)
+	public static class ColdCache {
+		@Setup(Level.Invocation)
+		public void setup (final TileCacheBenchmark benchmark) {
+			FxPlatform.runAndWait(new Runnable() {
+				@Override
+				public void run() {
+					benchmark.map.clearMemoryTileCache();
+				}
+			});
+		}
+	}
+}
@@ -17,10 +17,6 @@
 
 package de.itd.c2x.system.mmi.container.gpsposition;
 
-import javafx.animation.Interpolator;
-import javafx.animation.KeyFrame;
-import javafx.animation.KeyValue;
-import javafx.animation.Timeline;
 import javafx.beans.property.DoubleProperty;
 import javafx.beans.property.SimpleBooleanProperty;
 import javafx.beans.property.SimpleDoubleProperty;
@@ -32,7 +28,6 @@ import javafx.scene.text.Font;
 import javafx.scene.text.FontWeight;
 import javafx.scene.text.Text;
 import javafx.scene.text.TextAlignment;
-import javafx.util.Duration;
 import de.itd.maps.mapsforge.MapItem;
 
 public class Car extends MapItem {
@@ -40,8 +35,7 @@ public class Car extends MapItem {
     private static final double METERS_TO_PIXEL = 1 / 7.5;
     private static final double _RADIUS = 300;
 
-    boolean timelinePlaying = false;
-    private Timeline radarTimeline;
+    boolean radarPlaying = false;
 
     private final SimpleDoubleProperty radiusProperty = new SimpleDoubleProperty(_RADIUS);
     private final SimpleDoubleProperty radiusInPixelProperty = new SimpleDoubleProperty();
@@ -134,7 +128,6 @@ public class Car extends MapItem {
     private void addCarFeatures() {
 	    radiusInPixelProperty.bind(radiusProperty().multiply(METERS_TO_PIXEL));
 	    addOuterCircle();
-	    addRadarSignal();
     }
 
     private void addOuterCircle() {
@@ -150,40 +143,32 @@ public class Car extends MapItem {
         getChildren().add(circleOuter);
     }
 
-    private void addRadarSignal() {
-    	Circle radar = new Circle (0, 0, 0, new Color(1, 1, 1, 0.0));
-    	
-    	radar.setStroke(new Color(0.3, 0.3, 0.3, 0.4));
-    	radar.setStrokeWidth(.3);
-    	radar.setOpacity(0);
-    	
+    /**
+     * Adds the radar of a ping, called by the {@link RadarAnimator}
+     */
+    void attachRadar(Circle radar) {
     	getChildren().add(radar);
-    	
-    	
-    	radarTimeline = new Timeline();
-    	radarTimeline.getKeyFrames().add(
-    			new KeyFrame(
-    				Duration.seconds(0),
-	    			new KeyValue(radar.radiusProperty(), 0, Interpolator.LINEAR),
-	    			new KeyValue(radar.opacityProperty(), 1, Interpolator.LINEAR)
-    				)
-    			);
-    	
-    	radarTimeline.getKeyFrames().add(
-    			new KeyFrame(
-    					Duration.seconds(0.2),
-    					new KeyValue(radar.radiusProperty(), _RADIUS * METERS_TO_PIXEL, Interpolator.EASE_OUT),
-    					new KeyValue(radar.opacityProperty(), 0, Interpolator.LINEAR)
-    					)
-    			);
     }
 
     /**
-     * Shows one "Ping" on the Radar
+     * Removes the radar of a ping, called by the {@link RadarAnimator}
+     */
+    void detachRadar(Circle radar) {
+    	getChildren().remove(radar);
+    }
+
+    /**
+     * @return The radius a ping on the radar expands to
+     */
+    double getRadarRadius() {
+    	return _RADIUS * METERS_TO_PIXEL;
+    }
+
+    /**
+     * Shows one "Ping" on the Radar, needs to be called by the FX-Thread
      */
     public void playRadar() {
-	    if (radarTimeline != null && radarTimeline.getCurrentRate() == 0)
-	        radarTimeline.play();
+    	RadarAnimator.getInstance().ping(this);
     }
 
     /**
@@ -0,0 +1,163 @@
+/*
+ * Copyright (c) 2013 Michael Watzko and IT-Designers GmbH.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.itd.c2x.system.mmi.container.gpsposition;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+
+import javafx.animation.AnimationTimer;
+import javafx.animation.Interpolator;
+import javafx.scene.paint.Color;
+import javafx.scene.shape.Circle;
+
+/**
+ * Animates the radar pings of all {@link Car}s from a single pulse.
+ *
+ * A ping borrows a {@link Circle} from a pool, attaches it to its
+ * {@link Car} and returns it once the ping is over, so the amount
+ * of radar nodes only depends on the amount of concurrent pings.
+ * The pulse is only registered while there are pings to animate.
+ *
+ * All methods need to be called by the FX-Thread.
+ */
+public final class RadarAnimator {
+
+	public static final long DURATION = 200_000_000L;	// nanoseconds
+
+	private static final int	INITIAL_CAPACITY	= 16;
+	private static final Color	FILL				= new Color(1, 1, 1, 0.0);
+	private static final Color	STROKE				= new Color(0.3, 0.3, 0.3, 0.4);
+
+	private static final RadarAnimator INSTANCE = new RadarAnimator();
+
+	private final ArrayDeque<Circle> pool = new ArrayDeque<>();
+
+	private Car[]		cars	= new Car	[INITIAL_CAPACITY];
+	private Circle[]	radars	= new Circle[INITIAL_CAPACITY];
+	private long[]		starts	= new long	[INITIAL_CAPACITY];
+	private int			active;
+	private boolean		running;
+
+	private final AnimationTimer timer = new AnimationTimer() {
+		@Override
+		public void handle(long now) {
+			pulse(now);
+		}
+	};
+
+	private RadarAnimator () {
+
+	}
+
+	/**
+	 * @return The {@link RadarAnimator} shared by all {@link Car}s
+	 */
+	public static RadarAnimator getInstance () {
+		return INSTANCE;
+	}
+
+	/**
+	 * Shows one ping on the radar of the given {@link Car},
+	 * unless there already is a ping
+	 *
+	 * @param car	{@link Car} to ping
+	 */
+	public void ping (Car car) {
+		if (car.radarPlaying) {
+			return;
+		}
+
+		if (active == cars.length) {
+			cars	= Arrays.copyOf(cars,	active * 2);
+			radars	= Arrays.copyOf(radars,	active * 2);
+			starts	= Arrays.copyOf(starts,	active * 2);
+		}
+
+		Circle radar = pool.poll();
+
+		if (radar == null) {
+			radar = new Circle(0, 0, 0, FILL);
+			radar.setStroke(STROKE);
+			radar.setStrokeWidth(.3);
+			radar.setMouseTransparent(true);
+		}
+
+		radar.setRadius(0);
+		radar.setOpacity(1);
+		car.attachRadar(radar);
+		car.radarPlaying = true;
+
+		cars	[active] = car;
+		radars	[active] = radar;
+		starts	[active] = -1;	// starts with the next pulse
+		active++;
+
+		if (!running) {
+			running = true;
+			timer.start();
+		}
+	}
+
+	/**
+	 * @return The amount of pings currently animated
+	 */
+	public int getActiveCount () {
+		return active;
+	}
+
+	/**
+	 * @return The amount of radar nodes waiting for reuse
+	 */
+	public int getPoolSize () {
+		return pool.size();
+	}
+
+	private void pulse (long now) {
+		for (int i = 0; i < active; i++) {
+			if (starts[i] < 0) {
+				starts[i] = now;
+			}
+
+			double fraction = (now - starts[i]) / (double)DURATION;
+
+			if (fraction < 1) {
+				radars[i].setRadius	(Interpolator.EASE_OUT.interpolate(0d, cars[i].getRadarRadius(), fraction));
+				radars[i].setOpacity(1 - fraction);
+				continue;
+			}
+
+			// the ping is over, return the radar
+			cars[i].detachRadar(radars[i]);
+			cars[i].radarPlaying = false;
+			pool.push(radars[i]);
+
+			int last	= --active;
+			cars	[i] = cars	[last];
+			radars	[i] = radars[last];
+			starts	[i] = starts[last];
+			cars	[last] = null;
+			radars	[last] = null;
+			i--;
+		}
+
+		if (active == 0) {
+			running = false;
+			timer.stop();
+		}
+	}
+}
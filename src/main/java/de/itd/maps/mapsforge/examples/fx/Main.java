@@ -19,13 +19,12 @@ package de.itd.maps.mapsforge.examples.fx;
 
 import java.io.File;
 import java.io.IOException;
-import java.lang.ref.WeakReference;
 import java.lang.reflect.Constructor;
 import java.net.URL;
-import java.util.ArrayList;
-import java.util.List;
 import java.util.Random;
+import java.util.concurrent.TimeUnit;
 
+import javafx.animation.AnimationTimer;
 import javafx.application.Application;
 import javafx.application.Platform;
 import javafx.beans.InvalidationListener;
@@ -35,10 +34,14 @@ import javafx.beans.property.ReadOnlyStringProperty;
 import javafx.beans.property.SimpleBooleanProperty;
 import javafx.beans.property.SimpleStringProperty;
 import javafx.beans.property.StringProperty;
+import javafx.concurrent.WorkerStateEvent;
+import javafx.event.ActionEvent;
 import javafx.event.EventHandler;
 import javafx.fxml.FXMLLoader;
 import javafx.scene.Parent;
 import javafx.scene.Scene;
+import javafx.scene.control.MenuItem;
+import javafx.scene.paint.Color;
 import javafx.stage.Stage;
 import javafx.stage.WindowEvent;
 import javafx.util.Callback;
@@ -51,6 +54,17 @@ import de.itd.maps.mapsforge.MapItem;
 import de.itd.maps.mapsforge.MapsforgeMap;
 import de.itd.maps.mapsforge.MapsforgeMapContextMenu.ContextActionEvent;
 import de.itd.maps.mapsforge.MapsforgeMapContextMenu.ContextEntry;
+import de.itd.maps.mapsforge.examples.fx.map.FollowPrefetcher;
+import de.itd.maps.mapsforge.examples.fx.map.MapItemIndex;
+import de.itd.maps.mapsforge.examples.fx.map.MapLoader;
+import de.itd.maps.mapsforge.examples.fx.map.MapUpdateScheduler;
+import de.itd.maps.mapsforge.examples.fx.metrics.FxGauges;
+import de.itd.maps.mapsforge.examples.fx.metrics.Metrics;
+import de.itd.maps.mapsforge.examples.fx.metrics.PulseMonitor;
+import de.itd.maps.mapsforge.examples.fx.movement.MotionModel;
+import de.itd.maps.mapsforge.examples.fx.movement.MovementEngine;
+import de.itd.maps.mapsforge.examples.fx.render.FleetLayer;
+import de.itd.maps.mapsforge.examples.fx.route.RouteRecorder;
 import de.itd.maps.mapsforge.tiles.LiveRenderRule;
 import de.itd.maps.mapsforge.tiles.LiveRenderRule.Drawable;
 
@@ -58,9 +72,38 @@ public class Main extends Application {
 	
 	public static final int PRIO_FOLLOW_HARD = 1000;
 	public static final int PRIO_FOLLOW_SOFT = 100;
+	
+	public static final long CAR_MOVEMENT_INTERVAL	= 100;
+	public static final long CAR_EXTRAPOLATION		= 1000;
+	public static final int	 CAR_RADAR_CHANCE		= 60;	// positions are applied on each pulse
+	
+	public static final int	 FLEET_SIZE				= 1000;
+	public static final double FLEET_SPREAD			= 0.02;
+	public static final double PICK_RADIUS			= 32;	// pixels
 
-    private MapsforgeMap 	map;
+    private MapsforgeMap 		map;
+    private MapUpdateScheduler	updateScheduler;
+    private MapItemIndex		mapItemIndex;
+    private FollowPrefetcher	followPrefetcher;
+    private PulseMonitor		pulseMonitor;
+    private FxGauges			fxGauges;
+    private MapLoader			mapLoader;
+    private long				startTime;
+    private FleetLayer			fleetLayer;
+    private int					nextFleetId;
+    private final RouteRecorder	routeRecorder = new RouteRecorder();
     private Logger 			logger = Logger.getLogger(getClass());
+    private Random			random = new Random();
+    
+    private final MovementEngine movementEngine = new MovementEngine(CAR_MOVEMENT_INTERVAL) {
+    	@Override
+    	protected void onApplied(MapItem item) {
+    		// play the radar sometimes
+    		if (item instanceof Car && random.nextInt(CAR_RADAR_CHANCE) == 0) {
+    			((Car)item).playRadar();
+    		}
+    	}
+    };
 
     /**
      * Start, just launch the {@link Application}
@@ -75,7 +118,17 @@ public class Main extends Application {
     @Override
     public void start(final Stage stage) throws Exception {
     
+    	startTime = System.nanoTime();
+    	
 		logger.debug("Application is starting");
+		
+		// check the map file in the background, while the scene is shown
+		mapLoader = new MapLoader( new File(
+				getClass().getProtectionDomain().getCodeSource().getLocation().getFile(),
+				"maps/stuttgart_with_lanes.map"
+			)
+		);
+		
 		logger.debug("Going to load and show scene");
 
 		
@@ -88,6 +141,30 @@ public class Main extends Application {
 			public void handle(WindowEvent event) {
 				logger.debug("---------------------");
 				logger.debug("Received close rquest");
+				logger.debug("Going to cancel "+mapLoader.getClass().getSimpleName());
+				mapLoader.cancel();
+				
+				logger.debug("Going to stop "+movementEngine.getClass().getSimpleName());
+				movementEngine.stop();
+				
+				logger.debug("Going to stop "+updateScheduler.getClass().getSimpleName());
+				logger.debug(updateScheduler.getCoalescedCount()+" of "+updateScheduler.getRequestCount()+" map updates were coalesced");
+				updateScheduler.stop();
+				
+				logger.debug("Going to stop "+mapItemIndex.getClass().getSimpleName());
+				mapItemIndex.stop();
+				
+				logger.debug("Going to stop "+followPrefetcher.getClass().getSimpleName());
+				followPrefetcher.stop();
+				
+				logger.debug("Going to stop "+routeRecorder.getClass().getSimpleName());
+				routeRecorder.shutdown();
+				
+				logger.debug("Going to stop "+pulseMonitor.getClass().getSimpleName());
+				logger.debug("Metrics: "+Metrics.getInstance().snapshot().toMap());
+				pulseMonitor.stop();
+				fxGauges.stop();
+				
 				logger.debug("Going to destroy "+map.getClass().getSimpleName());
 				map.destroy();
 				
@@ -97,16 +174,13 @@ public class Main extends Application {
 		});
 		
 	
-		Platform.runLater(new Runnable() {
+		// register items and draw the map, as soon as it is ready
+		mapLoader.setOnSucceeded(new EventHandler<WorkerStateEvent>() {
 		    @Override
-		    public void run() {
+		    public void handle(WorkerStateEvent event) {
 	
 				logger.debug("Going to load map");
-				map.loadMap( new File(
-						getClass().getProtectionDomain().getCodeSource().getLocation().getFile(),
-						"maps/stuttgart_with_lanes.map"
-					)
-				);
+				map.loadMap(mapLoader.getValue());
 				logger.debug("Map loaded");
 				
 				
@@ -142,12 +216,88 @@ public class Main extends Application {
 				
 				
 				
+				/*
+				 * 
+				 * Create a ContextEntry, that adds a whole fleet
+				 * to the FleetLayer, the fleet has a ContextMenu,
+				 * that allows to delete a single car
+				 * 
+				 */
+				map.getMapContextMenu().add(new ContextEntry() {
+
+					private StringProperty text = new SimpleStringProperty("Add Fleet ("+FLEET_SIZE+" Cars)");
+					
+					@Override
+					public ReadOnlyStringProperty textProperty() {
+						return text;
+					}
+					
+					@Override
+					public void onAction(ContextActionEvent event) {
+						GeoPoint point = map.getGeoPoint(
+								event.getPositionMap().getX(),
+								event.getPositionMap().getY()
+								);
+						
+						addSampleFleet(point.latitude, point.longitude);
+					}
+				});
+				
+				/*
+				 * 
+				 * Create a ContextEntry, that follows the car
+				 * nearest to the clicked position, found by
+				 * the MapItemIndex instead of the scene graph
+				 * 
+				 */
+				map.getMapContextMenu().add(new ContextEntry() {
+
+					private StringProperty text = new SimpleStringProperty("Follow Nearest Car");
+					
+					@Override
+					public ReadOnlyStringProperty textProperty() {
+						return text;
+					}
+					
+					@Override
+					public void onAction(ContextActionEvent event) {
+						MapItem item = mapItemIndex.getItemAt(
+								event.getPositionMap().getX(),
+								event.getPositionMap().getY(),
+								PICK_RADIUS
+								);
+						
+						if (item != null) {
+							followPrefetcher.follow(item, PRIO_FOLLOW_SOFT);
+						} else {
+							logger.debug("No car within "+PICK_RADIUS+" pixels");
+						}
+					}
+				});
+				
+				MenuItem deleteFleetCar = new MenuItem("Delete");
+				deleteFleetCar.setOnAction(new EventHandler<ActionEvent>() {
+					@Override
+					public void handle(ActionEvent event) {
+						fleetLayer.remove(fleetLayer.selectedIdProperty().get());
+					}
+				});
+				fleetLayer.getContextMenu().getItems().add(deleteFleetCar);
+				
+				
+				
 				// create a Car and follow it softly
 				Car car = addSampleCar(map, 48.71, 9.36);
 
-				addCarMovement(stage, car, 0.0, 0.001);
-				
-				map.getMapView().follow(
+				// interpolate between the steps, so the car moves smoothly on each pulse
+				movementEngine.setMotionModel(new MotionModel(
+						TimeUnit.MILLISECONDS.toNanos(CAR_MOVEMENT_INTERVAL),
+						TimeUnit.MILLISECONDS.toNanos(CAR_EXTRAPOLATION)
+						));
+				movementEngine.start();
+				addCarMovement(car, 0.0, 0.001);
+				
+				followPrefetcher.follow(
 						car,
 						PRIO_FOLLOW_SOFT
 						);
@@ -159,16 +309,9 @@ public class Main extends Application {
 				
 				
 				
-				// update the map, if the view has changed
-				InvalidationListener moveListener = new InvalidationListener() {
-					@Override
-					public void invalidated(Observable observable) {
-						map.updateMap(false);
-					}
-				};
-				
-				map.getMapView().longitudeProperty().addListener(moveListener);
-				map.getMapView().latitudeProperty() .addListener(moveListener);
+				// update the map once per pulse, if the view has changed
+				map.getMapView().longitudeProperty().addListener(updateScheduler.getRequestListener());
+				map.getMapView().latitudeProperty() .addListener(updateScheduler.getRequestListener());
 				
 				
 				
@@ -186,7 +329,18 @@ public class Main extends Application {
 				
 				// initialization done, draw the map
 				logger.debug("Going to draw the map");
-				map.updateMap(false);
+				updateScheduler.requestUpdate();
+				
+				new AnimationTimer() {
+					@Override
+					public void handle(long now) {
+						// the pulse after the first update
+						if (updateScheduler.getUpdateCount() > 0) {
+							stop();
+							logger.info("First interactive frame after "+((now - startTime) / 1000000)+" ms");
+						}
+					}
+				}.start();
 				
 				
 				
@@ -197,11 +351,25 @@ public class Main extends Application {
 				 *    will get the thing down
 				 *    --> Heavy operations, should not be called again,
 				 *        if the operation before has not finished yet
+				 *    --> Post tasks for the FX-Thread with the FxDispatcher,
+				 *        its queue is bounded and coalesces tasks by key
+				 *  
+				 *  Reproduce them headless with the StressTest
 				 */
-//				performStressTest(stage);
 
 		    }
 		});
+		
+		mapLoader.setOnFailed(new EventHandler<WorkerStateEvent>() {
+			@Override
+			public void handle(WorkerStateEvent event) {
+				logger.error("Failed to load the map", mapLoader.getException());
+			}
+		});
+		
+		Thread loader = new Thread(mapLoader, mapLoader.getClass().getSimpleName());
+		loader.setDaemon(true);
+		loader.start();
     }
     
     /**
@@ -220,6 +388,7 @@ public class Main extends Application {
     	
     	// add it to the map
     	map.addMapItem(car);
+    	mapItemIndex.add(car);
     	
     	
     	
@@ -235,8 +404,8 @@ public class Main extends Application {
 			
 			@Override
 			public void onAction(ContextActionEvent event) {
-				if (map.getMapView().isFollowing(car)) {
-					map.getMapView().unfollow();
+				if (followPrefetcher.isFollowing(car)) {
+					followPrefetcher.unfollow();
 				}
 			}
 		});
@@ -253,7 +422,7 @@ public class Main extends Application {
 			
 			@Override
 			public void onAction(ContextActionEvent event) {
-				map.getMapView().follow(car, PRIO_FOLLOW_SOFT);
+				followPrefetcher.follow(car, PRIO_FOLLOW_SOFT);
 			}
 		});
 		
@@ -269,7 +438,7 @@ public class Main extends Application {
 			
 			@Override
 			public void onAction(ContextActionEvent event) {
-				map.getMapView().follow(car, PRIO_FOLLOW_HARD);
+				followPrefetcher.follow(car, PRIO_FOLLOW_HARD);
 			}
 		});
 		
@@ -285,6 +454,7 @@ public class Main extends Application {
 			
 			@Override
 			public void onAction(ContextActionEvent event) {
+				mapItemIndex.remove(car);
 				map.removeMapItem(car);
 			}
 		});
@@ -293,160 +463,40 @@ public class Main extends Application {
     	return car;
     }
     
-    public void performStressTest (final Stage stage) {
-    	final long toSleep = 1000 / 5;
-		new Thread(){
-			public void run() {
-				
-
-				final List<MapItem> items	= new ArrayList<>();
-				
-				for (int i = 0; i < 9999; i++) {
-					
-					final MapItem car = new Car(48.71, 9.36007+(i*.001), "i="+i);
-					car.getContextEntries().add(new ContextEntry() {
-						
-						private StringProperty text = new SimpleStringProperty("Delete");
-						
-						@Override
-						public ReadOnlyStringProperty textProperty() {
-							return text;
-						}
-						
-						@Override
-						public void onAction(ContextActionEvent event) {
-							map.removeMapItem(car);
-						}
-					});
-					items	.add(car);
-				}
-				
-				logger.debug("All MapItems created");
-				for (MapItem i : items) {
-					map.addMapItem(i);
-				}
-				logger.debug("All MapItems added");
-				
-				
-
-				final Object 			o 	= new Object ();
-				final BooleanProperty	ran	= new SimpleBooleanProperty(true);
-				
-				while (stage.isShowing()) {
-					try {
-						while (!ran.get()) {
-							Thread.sleep(1);
-						}
-						
-						// reset
-						ran.set(false);
-
-						Platform.runLater(new Runnable() {
-							
-							@Override
-							public void run() {
-								try {
-									double toAdd = 0.0005 * (toSleep / 1000d);
-									
-									// test
-									for (final MapItem i : items) {
-								
-										// update the item
-										i.latitudeProperty() .set( i.latitudeProperty() .get() + toAdd );
-										i.longitudeProperty().set( i.longitudeProperty().get() + toAdd );
-
-									}
-
-									map.updateMap(false);
-									
-									synchronized (o) {
-										o.notifyAll();
-									}
-								} finally {
-									synchronized (o) {
-										ran.set(true);
-									}
-								}
-							}
-						});
-								
-						
-						long timeBefore = System.currentTimeMillis();
-						synchronized (o) {
-							if (!ran.get()) {
-								o.wait(toSleep);
-							}
-						}
-						
-						long timeSleep = toSleep - (System.currentTimeMillis() - timeBefore);
-						if (timeSleep > 0) {
-							// some sleep
-							Thread.sleep(timeSleep);
-							
-						} else {
-							logger.warn("No time left to sleep!");
-							while (!ran.get() && stage.isShowing()) {
-								Thread.sleep(1);
-							}
-						}
-						
-					} catch (Throwable t) {
-						t.printStackTrace();
-					}
-				}
-			}
-			
-		}.start();
+    /**
+     * Adds {@link #FLEET_SIZE} cars around the given position
+     * to the {@link FleetLayer}
+     * 
+     * @param lat	Latitude of the center of the fleet
+     * @param lon	Longitude of the center of the fleet
+     */
+    public void addSampleFleet (double lat, double lon) {
+    	for (int i = 0; i < FLEET_SIZE; i++) {
+    		// ids are never reused, deleted cars would otherwise be replaced
+    		int index = fleetLayer.add(
+    				"f="+(nextFleetId++),
+    				lat + (random.nextDouble() * 2 - 1) * FLEET_SPREAD,
+    				lon + (random.nextDouble() * 2 - 1) * FLEET_SPREAD,
+    				Color.RED,
+    				Color.PINK
+    				);
+    		fleetLayer.setDirection(index, random.nextDouble() * 360);
+    	}
     }
     
     /**
      * Adds a constantly movement to the given {@link Car}
      * 
-     * @param stage	Current {@link Stage}, to watch when to end
+     * The {@link Car} is moved by the shared {@link MovementEngine},
+     * that applies the positions of all {@link Car}s once per frame
+     * 
      * @param car	{@link Car} to move
      * @param lat	latitude to move the {@link Car} by each second
      * @param lon	longitude to move the {@link Car} by each second
      */
-    public void addCarMovement (final Stage stage, Car car, final double lat, final double lon) {
-    	
-    	final long 		sleep 	= 100;
-    	final double	fact	= 1000d / sleep;
-    	
-    	final WeakReference<Car> ref = new WeakReference<Car>(car);
-    	
-		new Thread () {
-			public void run() {
-				// as long, as the stage is shown
-				while (stage.isShowing() && ref.get() != null) {
-					
-					// some sleep time
-					try { Thread.sleep(sleep); } catch (Throwable t) {}
-					
-					// needs to be executed in the FX-Thread
-					Platform.runLater(new Runnable() {
-						@Override
-						public void run() {
-							// get the car
-							Car car = ref.get();
-							
-							// check whether it still exists
-							if (car != null) {
-								// update the position
-								car.latitudeProperty() .set( car.latitudeProperty() .get() + (lat/fact) );
-								car.longitudeProperty().set( car.longitudeProperty().get() + (lon/fact) );
-								
-								// play the radar sometimes
-								if (new Random().nextInt((int)fact) == 0) {
-									car.playRadar();
-								}
-							}
-						}
-					});
-				}
-				
-			}
-		}.start();
-    	
+    public void addCarMovement (Car car, double lat, double lon) {
+    	int slot = movementEngine.register(car);
+    	movementEngine.move(slot, lat, lon);
     }
     
     /**
@@ -494,7 +544,7 @@ public class Main extends Application {
 					
 					// clear cache
 					map.clearMemoryTileCache();
-					map.updateMap(false);
+					updateScheduler.requestUpdate();
 				}
 			}, "LiveRenderRule");
 		}
@@ -502,15 +552,84 @@ public class Main extends Application {
     
 
     /**
-     * Sets the {@link MapsforgeMap} if it isn't set yet
+     * Sets the {@link MapsforgeMap} if it isn't set yet and
+     * starts its {@link MapUpdateScheduler}, {@link MapItemIndex},
+     * {@link FollowPrefetcher}, {@link PulseMonitor} and {@link FxGauges}, needs to be
+     * called by the FX-Thread
      * @param engine {@link MapsforgeMap} to set
      */
     public void setMap(MapsforgeMap engine) {
 		if (this.map == null) {
-		    this.map = engine;
+		    this.map 				= engine;
+		    this.updateScheduler	= new MapUpdateScheduler(engine);
+		    this.updateScheduler.start();
+		    this.mapItemIndex		= new MapItemIndex(engine);
+		    this.mapItemIndex.start();
+		    this.followPrefetcher	= new FollowPrefetcher(engine);
+		    this.followPrefetcher.start();
+		    this.pulseMonitor		= new PulseMonitor();
+		    this.pulseMonitor.start();
+		    
+		    this.fxGauges			= new FxGauges();
+		    addMetricGauges();
+		    this.fxGauges.start();
 		}
     }
+    
+    /**
+     * Adds the {@link Metrics.Gauge}s of the map, they are published by
+     * the FX-Thread on each pulse and might therefore be one pulse outdated
+     */
+    private void addMetricGauges () {
+    	fxGauges.gauge(Metrics.MAP_ITEMS, new Metrics.Gauge() {
+			@Override
+			public long get() {
+				return mapItemIndex.size();
+			}
+		});
+    	fxGauges.gauge(Metrics.MAP_ITEMS_VISIBLE, new Metrics.Gauge() {
+			@Override
+			public long get() {
+				return mapItemIndex.getVisibleCount();
+			}
+		});
+    	fxGauges.gauge(Metrics.TILE_CACHE_MEMORY_TILES, new Metrics.Gauge() {
+			@Override
+			public long get() {
+				return map.memoryTileCacheTileCount().intValue();
+			}
+		});
+    	fxGauges.gauge(Metrics.TILE_CACHE_FILE_TILES, new Metrics.Gauge() {
+			@Override
+			public long get() {
+				return map.fileTileCacheTileCount().intValue();
+			}
+		});
+    	fxGauges.gauge(Metrics.MOVEMENT_APPLIED, new Metrics.Gauge() {
+			@Override
+			public long get() {
+				return movementEngine.getAppliedCount();
+			}
+		});
+    }
 
+    /**
+     * Sets the {@link FleetLayer} if it isn't set yet
+     * @param layer {@link FleetLayer} to set
+     */
+    public void setFleetLayer(FleetLayer layer) {
+    	if (this.fleetLayer == null) {
+    		this.fleetLayer = layer;
+    	}
+    }
+    
+    /**
+     * @return The {@link FleetLayer} to draw large fleets with
+     */
+    public FleetLayer getFleetLayer() {
+    	return fleetLayer;
+    }
+    
     /**
      * @return The {@link MapsforgeMap} that draws the map
      */
@@ -518,6 +637,41 @@ public class Main extends Application {
     	return map;
     }
     
+    /**
+     * @return The {@link MapUpdateScheduler} to request updates of the {@link MapsforgeMap} with
+     */
+    public MapUpdateScheduler getUpdateScheduler() {
+    	return updateScheduler;
+    }
+    
+    /**
+     * @return The {@link MapItemIndex} of the {@link MapItem}s on the {@link MapsforgeMap}
+     */
+    public MapItemIndex getMapItemIndex() {
+    	return mapItemIndex;
+    }
+    
+    /**
+     * @return The {@link FollowPrefetcher} to follow {@link MapItem}s with
+     */
+    public FollowPrefetcher getFollowPrefetcher() {
+    	return followPrefetcher;
+    }
+    
+    /**
+     * @return The {@link RouteRecorder} to record the route of a {@link MapItem} with
+     */
+    public RouteRecorder getRouteRecorder() {
+    	return routeRecorder;
+    }
+    
+    /**
+     * @return The {@link MapLoader} that checks the map file
+     */
+    public MapLoader getMapLoader() {
+    	return mapLoader;
+    }
+    
 
     /**
      * Loads the {@link Parent} from the given FXML-file
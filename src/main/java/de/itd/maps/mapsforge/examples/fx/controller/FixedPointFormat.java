@@ -0,0 +1,81 @@
+/*
+ * Copyright (c) 2013 Michael Watzko and IT-Designers GmbH.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.itd.maps.mapsforge.examples.fx.controller;
+
+/**
+ * Appends numbers with a fixed amount of decimals to a {@link StringBuilder}
+ * without creating any objects, as opposed to {@link String#format(String, Object...)}
+ */
+public final class FixedPointFormat {
+
+	public static final int MAX_DECIMALS = 15;
+
+	private static final long[] POWERS = new long[MAX_DECIMALS + 1];
+
+	static {
+		POWERS[0] = 1;
+		for (int i = 1; i < POWERS.length; i++) {
+			POWERS[i] = POWERS[i - 1] * 10;
+		}
+	}
+
+	private FixedPointFormat () {
+
+	}
+
+	/**
+	 * Appends the given value rounded half up to the given amount of decimals,
+	 * values that do not fit into a long after scaling are appended as "?"
+	 *
+	 * @param builder	{@link StringBuilder} to append to
+	 * @param value		Value to append
+	 * @param decimals	Amount of decimals between 0 and {@link #MAX_DECIMALS}
+	 * @return The given {@link StringBuilder}
+	 */
+	public static StringBuilder append (StringBuilder builder, double value, int decimals) {
+		long	power	= POWERS[decimals];
+		double	scaled	= Math.abs(value) * power + 0.5;
+
+		if (Double.isNaN(scaled) || scaled >= Long.MAX_VALUE) {
+			return builder.append('?');
+		}
+
+		long	fixed		= (long)scaled;
+		long	integer		= fixed / power;
+		long	fraction	= fixed % power;
+
+		if (value < 0 && fixed != 0) {
+			builder.append('-');
+		}
+
+		builder.append(integer);
+
+		if (decimals > 0) {
+			builder.append('.');
+
+			// leading zeros of the fraction
+			for (int i = decimals - 1; i > 0 && fraction < POWERS[i]; i--) {
+				builder.append('0');
+			}
+
+			builder.append(fraction);
+		}
+
+		return builder;
+	}
+}
@@ -17,13 +17,18 @@
 
 package de.itd.maps.mapsforge.examples.fx.controller;
 
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
 import java.net.URL;
 import java.util.ResourceBundle;
 
-import javafx.application.Platform;
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
 import javafx.beans.InvalidationListener;
 import javafx.beans.Observable;
-import javafx.beans.binding.Bindings;
 import javafx.beans.value.ChangeListener;
 import javafx.beans.value.ObservableValue;
 import javafx.event.ActionEvent;
@@ -39,17 +44,27 @@ import javafx.scene.control.TextField;
 import javafx.scene.control.ToggleButton;
 import javafx.scene.input.MouseEvent;
 import javafx.scene.layout.AnchorPane;
+import javafx.util.Duration;
 import javafx.util.StringConverter;
-import javafx.util.converter.IntegerStringConverter;
 
-import org.mapsforge.core.model.GeoPoint;
+import org.apache.log4j.Logger;
 
+import de.itd.maps.mapsforge.MapItem;
 import de.itd.maps.mapsforge.MapsforgeMap;
 import de.itd.maps.mapsforge.examples.fx.Main;
+import de.itd.maps.mapsforge.examples.fx.map.MapUpdateScheduler;
+import de.itd.maps.mapsforge.examples.fx.map.TileCacheBudget;
+import de.itd.maps.mapsforge.examples.fx.metrics.HistogramSnapshot;
+import de.itd.maps.mapsforge.examples.fx.metrics.Metrics;
+import de.itd.maps.mapsforge.examples.fx.metrics.MetricsSnapshot;
+import de.itd.maps.mapsforge.examples.fx.render.ClusterLayer;
+import de.itd.maps.mapsforge.examples.fx.render.FleetLayer;
+import de.itd.maps.mapsforge.examples.fx.route.RouteLayer;
 
 
 public class MapController implements Initializable {
 	
+	public static final String ROUTE_DIRECTORY = "routes";
 
 	@FXML private AnchorPane	paneMap					= null;
 	@FXML private Label			labelMouseX				= null;
@@ -64,7 +79,13 @@ public class MapController implements Initializable {
 	@FXML private Label			labelMemoryMax			= null;
 	@FXML private Label			labelMemoryUsed			= null;
 	@FXML private Label			labelMemoryFree			= null;
+	@FXML private Label			labelMemoryTileCacheSize	= null;
+	@FXML private Label			labelMemoryDirect		= null;
+	@FXML private Label			labelGarbageCollection	= null;
 	@FXML private Label			labelFileLimit			= null;
+	@FXML private Label			labelMapUpdateDuration	= null;
+	@FXML private Label			labelMapUpdateCount		= null;
+	@FXML private Label			labelPulseInterval		= null;
 	
 	@FXML private ToggleButton	checkBoxRecordRoute			= null;
 	@FXML private CheckBox		checkBoxUseFileCache		= null;
@@ -73,13 +94,17 @@ public class MapController implements Initializable {
 	
 	@FXML private ProgressBar	progressBarMemoryTileCacheUsage		= null;
 	@FXML private ProgressBar	progressBarFileTileCacheUsage		= null;
+	@FXML private ProgressBar	progressBarMapLoading				= null;
 	@FXML private TextField		textFieldMemoryTileCacheCapacity	= null;
 	
 	
-	private GeoPoint		lastMousePosition;
+	private MouseReadout	mouseReadout;
 	private Main			main;
 	
 	private MapsforgeMap		mapEngine;
+	private MapUpdateScheduler	updateScheduler;
+	private RouteLayer			routeLayer;
+	private Logger				logger = Logger.getLogger(getClass());
 	
 	public MapController (Main main) {
 		// initialize
@@ -99,12 +124,29 @@ public class MapController implements Initializable {
 		// register the mapEngine
 		main.setMap(mapEngine);
 		
+		// show the progress of loading the map
+		progressBarMapLoading.progressProperty().bind(main.getMapLoader().progressProperty());
+		progressBarMapLoading.visibleProperty() .bind(main.getMapLoader().runningProperty());
+		
+		// recorded route below the fleet, simplified and clipped as polylines
+		routeLayer = new RouteLayer(mapEngine);
+		paneMap.getChildren().add(routeLayer);
+		
+		// bubbles instead of overlapping cars at low zoom levels
+		paneMap.getChildren().add(new ClusterLayer(mapEngine, main.getMapItemIndex()));
+		
+		// lightweight layer for large fleets
+		FleetLayer fleetLayer = new FleetLayer(mapEngine);
+		paneMap.getChildren().add(fleetLayer);
+		main.setFleetLayer(fleetLayer);
+		updateScheduler = main.getUpdateScheduler();
+		
 		
 		// to see the changes
 		checkBoxUseFileCache.selectedProperty().addListener(new ChangeListener<Boolean>() {
 			@Override
 			public void changed(ObservableValue<? extends Boolean> observable, Boolean oldValue, Boolean newValue) {
-				mapEngine.updateMap(false);
+				updateScheduler.requestUpdate();
 			}
 		});
 		
@@ -127,6 +169,9 @@ public class MapController implements Initializable {
 
 
 		// register the Event listeners
+		mouseReadout = new MouseReadout(mapEngine, labelMouseX, labelMouseY, labelMouseLatitude, labelMouseLongitude);
+		mouseReadout.start();
+		
 		mapEngine.setOnMouseMoved(new EventHandler<MouseEvent>() {
 			@Override
 			public void handle(MouseEvent paramT) {
@@ -144,12 +189,16 @@ public class MapController implements Initializable {
 							mapEngine.memoryTileCacheTileCount().doubleValue() / mapEngine.memoryTileCacheCapacity().doubleValue()
 							);
 				}
+				
+				int tiles = mapEngine.memoryTileCacheTileCount().intValue();
+				labelMemoryTileCacheSize.setText(String.format("%d tiles, %.1f MB", tiles, TileCacheBudget.toMegabytes(tiles)));
 			}
 		};
 		
 		
 		mapEngine.memoryTileCacheCapacity()	.addListener(progressBarMemoryListener);
 		mapEngine.memoryTileCacheTileCount().addListener(progressBarMemoryListener);
+		progressBarMemoryListener.invalidated(null);
 		
 		InvalidationListener progressBarFileListener = new InvalidationListener() {
 			
@@ -199,8 +248,8 @@ public class MapController implements Initializable {
 		mapEngine.getMapView().zoomProperty()	.bindBidirectional(sliderZoom.valueProperty());
 		mapEngine.useFileTileCacheProperty()	.bindBidirectional(checkBoxUseFileCache.selectedProperty());
 		
-		StringConverter<? extends Number> converter = new IntegerStringConverter();
-		Bindings.bindBidirectional(textFieldMemoryTileCacheCapacity.textProperty(), mapEngine.memoryTileCacheCapacity(), (StringConverter<Number>)converter);
+		// the capacity is shown and entered as budget in megabytes
+		bindMemoryTileCacheBudget();
 		
 		
 		
@@ -212,47 +261,39 @@ public class MapController implements Initializable {
 			@Override
 			public void changed(ObservableValue<? extends Number> observable, Number oldValue, Number newValue) {
 				mapEngine.getMapView().setZoomLevel((byte)(double)((Double)newValue));
-				mapEngine.updateMap(false);
+				updateScheduler.requestUpdate();
 			}
 		});
 		
 		
-//		// record listener
-//		checkBoxRecordRoute.selectedProperty().addListener(new ChangeListener<Boolean>() {
-//			@Override
-//			public void changed(ObservableValue<? extends Boolean> observable, Boolean oldValue, Boolean newValue) {
-//				if (newValue) {
-//					// create the list for recording
-//					currentRoute = new Route<MapPosition>();
-//					
-//					// add the route
-//				//	main.getMapforge().addRoute(currentRoute);
-//					
-//				} else {
-//					// do not record
-//					currentRoute = null;
-//				}
-//				System.out.println ("recording="+newValue);	// TODO
-//			}
-//		});
+		// record the route of the followed MapItem
+		checkBoxRecordRoute.selectedProperty().addListener(new ChangeListener<Boolean>() {
+			@Override
+			public void changed(ObservableValue<? extends Boolean> observable, Boolean oldValue, Boolean newValue) {
+				if (newValue) {
+					startRecording();
+				} else {
+					main.getRouteRecorder().stop();
+				}
+			}
+		});
 		
 		
-		// TODO dirty
-		// thread that updates the memory usage
-		new Thread(){
+		// updates the memory usage and statistics until the map is destroyed
+		final Timeline statistics = new Timeline();
+		statistics.setCycleCount(Timeline.INDEFINITE);
+		statistics.getKeyFrames().add(new KeyFrame(Duration.millis(500), new EventHandler<ActionEvent>() {
 			@Override
-			public void run() {
-				while (!mapEngine.isDestroyed()) {
-					Platform.runLater(new Runnable() {
-						@Override
-						public void run() {
-							updateMemoryUsage();
-						}
-					});
-					try { Thread.sleep(500); } catch (Throwable t) {}
+			public void handle(ActionEvent event) {
+				if (mapEngine.isDestroyed()) {
+					statistics.stop();
+					return;
 				}
+				updateMemoryUsage();
+				updateRenderStatistics();
 			}
-		}.start();;
+		}));
+		statistics.play();
 	}
 	
 	/**
@@ -271,12 +312,136 @@ public class MapController implements Initializable {
 		labelMemoryMax	.setText(String.format("%9.2f MB", 	max));
 		labelMemoryFree	.setText(String.format("%9.2f MB", free));
 		labelMemoryUsed	.setText(String.format("%9.2f MB", used));
+		
+		// direct buffers outside of the heap do not show up above, mapped files are a separate pool and not counted
+		long direct = 0;
+		for (BufferPoolMXBean pool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)) {
+			if ("direct".equals(pool.getName())) {
+				direct += pool.getMemoryUsed();
+			}
+		}
+		
+		long gcTime		= 0;
+		long gcCount	= 0;
+		for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+			gcTime	+= Math.max(0, gc.getCollectionTime());
+			gcCount	+= Math.max(0, gc.getCollectionCount());
+		}
+		
+		labelMemoryDirect		.setText(String.format("%9.2f MB", direct / 1024d / 1024d));
+		labelGarbageCollection	.setText(String.format("%d ms (%d)", gcTime, gcCount));
+	}
+	
+	/**
+	 * Updates the durations and counts of the map updates and
+	 * the pulse intervals, needs to be performed by the FX-Thread
+	 */
+	public void updateRenderStatistics () {
+		MetricsSnapshot		snapshot	= Metrics.getInstance().snapshot();
+		HistogramSnapshot	update		= snapshot.getHistogram(Metrics.MAP_UPDATE);
+		HistogramSnapshot	pulse		= snapshot.getHistogram(Metrics.FX_PULSE);
+		
+		labelMapUpdateDuration.setText(String.format("%.1f / %.1f / %.1f ms",
+				update.getPercentile(0.50)	/ 1e6,
+				update.getPercentile(0.99)	/ 1e6,
+				update.getMax()				/ 1e6
+				));
+		labelMapUpdateCount.setText(String.format("%d (%d coalesced)",
+				updateScheduler.getUpdateCount(),
+				updateScheduler.getCoalescedCount()
+				));
+		labelPulseInterval.setText(String.format("%.1f / %.1f ms",
+				pulse.getPercentile(0.50)	/ 1e6,
+				pulse.getPercentile(0.99)	/ 1e6
+				));
+	}
+	
+	/**
+	 * Shows the capacity of the memory tile cache as budget in megabytes,
+	 * the capacity is only changed once an edited budget is committed
+	 * with enter or by leaving the field
+	 */
+	private void bindMemoryTileCacheBudget () {
+		final StringConverter<Number> converter = TileCacheBudget.megabyteConverter();
+		
+		textFieldMemoryTileCacheCapacity.setText(converter.toString(mapEngine.memoryTileCacheCapacity().get()));
+		
+		mapEngine.memoryTileCacheCapacity().addListener(new ChangeListener<Number>() {
+			@Override
+			public void changed(ObservableValue<? extends Number> observable, Number oldValue, Number newValue) {
+				textFieldMemoryTileCacheCapacity.setText(converter.toString(newValue));
+			}
+		});
+		
+		textFieldMemoryTileCacheCapacity.setOnAction(new EventHandler<ActionEvent>() {
+			@Override
+			public void handle(ActionEvent event) {
+				commitMemoryTileCacheBudget(converter);
+			}
+		});
+		
+		textFieldMemoryTileCacheCapacity.focusedProperty().addListener(new ChangeListener<Boolean>() {
+			@Override
+			public void changed(ObservableValue<? extends Boolean> observable, Boolean oldValue, Boolean newValue) {
+				if (!newValue) {
+					commitMemoryTileCacheBudget(converter);
+				}
+			}
+		});
+	}
+	
+	private void commitMemoryTileCacheBudget (StringConverter<Number> converter) {
+		Number	capacity	= mapEngine.memoryTileCacheCapacity().get();
+		String	text		= textFieldMemoryTileCacheCapacity.getText();
+		
+		// not edited, the shown budget is rounded
+		if (converter.toString(capacity).equals(text)) {
+			return;
+		}
+		
+		try {
+			mapEngine.memoryTileCacheCapacity().set(converter.fromString(text).intValue());
+		} catch (NumberFormatException e) {
+			logger.warn("Invalid memory tile cache budget: "+text);
+		}
+		
+		// shows the budget of the capacity, even if it did not change
+		textFieldMemoryTileCacheCapacity.setText(converter.toString(mapEngine.memoryTileCacheCapacity().get()));
 	}
 	
 	public void onClear (ActionEvent event) {
-		int before = mapEngine.memoryTileCacheCapacity().get();
-		mapEngine.memoryTileCacheCapacity().set(0);
-		mapEngine.memoryTileCacheCapacity().set(before);
+		mapEngine.clearMemoryTileCache();
+		updateScheduler.requestUpdate();
+	}
+	
+	/**
+	 * Starts to record the route of the followed {@link MapItem} into
+	 * a new file in {@link #ROUTE_DIRECTORY}, deselects the record button
+	 * if nothing is followed or the directory could not be created
+	 */
+	private void startRecording () {
+		MapItem item = main.getFollowPrefetcher().getFollowed();
+		
+		if (item == null) {
+			logger.warn("Follow a car to record its route");
+			checkBoxRecordRoute.setSelected(false);
+			return;
+		}
+		
+		File directory	= new File(ROUTE_DIRECTORY);
+		File file		= new File(directory, "route-"+System.currentTimeMillis()+".trk");
+		
+		try {
+			if (!directory.isDirectory() && !directory.mkdirs()) {
+				throw new IOException("Failed to create "+directory.getAbsolutePath());
+			}
+			routeLayer.setTrack(main.getRouteRecorder().start(item, file));
+			logger.info("Recording route to "+file.getAbsolutePath());
+			
+		} catch (IOException e) {
+			logger.error("Failed to record route", e);
+			checkBoxRecordRoute.setSelected(false);
+		}
 	}
 	
 	/**
@@ -300,12 +465,7 @@ public class MapController implements Initializable {
 	 * @param event
 	 */
 	public void onMouseMoved (MouseEvent event) {
-		labelMouseX.setText(String.format("%.0f", event.getX()));
-		labelMouseY.setText(String.format("%.0f", event.getY()));
-		
-		lastMousePosition	= mapEngine.getGeoPoint(event.getX(), event.getY());
-		
-		labelMouseLatitude	.setText(String.format("%2.6f", lastMousePosition.latitude));
-		labelMouseLongitude	.setText(String.format("%2.6f", lastMousePosition.longitude));
+		// the labels are updated with the next pulse
+		mouseReadout.moved(event.getX(), event.getY());
 	}
 }
@@ -0,0 +1,136 @@
+/*
+ * Copyright (c) 2013 Michael Watzko and IT-Designers GmbH.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.itd.maps.mapsforge.examples.fx.controller;
+
+import javafx.animation.AnimationTimer;
+import javafx.scene.control.Label;
+
+import de.itd.maps.mapsforge.MapsforgeMap;
+import de.itd.maps.mapsforge.examples.fx.render.MapViewport;
+import de.itd.maps.mapsforge.examples.fx.render.MutableGeoPoint;
+
+/**
+ * Shows the pixel and geo position of the mouse on a {@link MapsforgeMap}.
+ *
+ * A mouse move only stores the pixel position. Once per pulse, the position is
+ * converted and formatted into reused buffers, and a {@link Label} is only
+ * given a new text if its text has changed. Therefore, no objects are created
+ * per mouse move and at most one text per {@link Label} and pulse.
+ */
+public class MouseReadout {
+
+	public static final int PIXEL_DECIMALS	= 0;
+	public static final int GEO_DECIMALS	= 6;
+
+	private final MapsforgeMap		map;
+	private final Label				labelX;
+	private final Label				labelY;
+	private final Label				labelLatitude;
+	private final Label				labelLongitude;
+	private final MapViewport		viewport	= new MapViewport();
+	private final MutableGeoPoint	position	= new MutableGeoPoint();
+	private final StringBuilder		text		= new StringBuilder();
+
+	private double	x;
+	private double	y;
+	private boolean	dirty;
+
+	private final AnimationTimer timer = new AnimationTimer() {
+		@Override
+		public void handle(long now) {
+			update();
+		}
+	};
+
+	/**
+	 * @param map				{@link MapsforgeMap} the mouse moves on
+	 * @param labelX			{@link Label} to show the x position in
+	 * @param labelY			{@link Label} to show the y position in
+	 * @param labelLatitude		{@link Label} to show the latitude in
+	 * @param labelLongitude	{@link Label} to show the longitude in
+	 */
+	public MouseReadout (MapsforgeMap map, Label labelX, Label labelY, Label labelLatitude, Label labelLongitude) {
+		this.map			= map;
+		this.labelX			= labelX;
+		this.labelY			= labelY;
+		this.labelLatitude	= labelLatitude;
+		this.labelLongitude	= labelLongitude;
+	}
+
+	/**
+	 * Starts to update the {@link Label}s once per pulse, needs to be called by the FX-Thread
+	 */
+	public void start () {
+		timer.start();
+	}
+
+	/**
+	 * Stops to update the {@link Label}s, needs to be called by the FX-Thread
+	 */
+	public void stop () {
+		timer.stop();
+	}
+
+	/**
+	 * Stores the new position of the mouse, needs to be called by the FX-Thread
+	 *
+	 * @param x	x position relative to the map
+	 * @param y	y position relative to the map
+	 */
+	public void moved (double x, double y) {
+		this.x		= x;
+		this.y		= y;
+		this.dirty	= true;
+	}
+
+	/**
+	 * @return The geo position of the mouse at the last update
+	 */
+	public MutableGeoPoint getPosition () {
+		return position;
+	}
+
+	/**
+	 * Updates the {@link Label}s if the mouse has moved, called once
+	 * per pulse after {@link #start()}, needs to be called by the FX-Thread
+	 */
+	public void update () {
+		if (!dirty) {
+			return;
+		}
+
+		dirty = false;
+		viewport.update(map, map.getLayoutBounds().getWidth(), map.getLayoutBounds().getHeight());
+		viewport.toGeoPoint(x, y, position);
+
+		show(labelX,			x,							PIXEL_DECIMALS);
+		show(labelY,			y,							PIXEL_DECIMALS);
+		show(labelLatitude,		position.getLatitude(),		GEO_DECIMALS);
+		show(labelLongitude,	position.getLongitude(),	GEO_DECIMALS);
+	}
+
+	private void show (Label label, double value, int decimals) {
+		text.setLength(0);
+		FixedPointFormat.append(text, value, decimals);
+
+		String current = label.getText();
+		if (current == null || !current.contentEquals(text)) {
+			label.setText(text.toString());
+		}
+	}
+}
@@ -0,0 +1,304 @@
+/*
+ * Copyright (c) 2013 Michael Watzko and IT-Designers GmbH.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.itd.maps.mapsforge.examples.fx.dispatch;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javafx.application.Platform;
+
+import org.apache.log4j.Logger;
+
+import de.itd.maps.mapsforge.examples.fx.metrics.Histogram;
+import de.itd.maps.mapsforge.examples.fx.metrics.Metrics;
+
+/**
+ * Bounded queue of tasks for the FX-Thread, as replacement for
+ * {@link Platform#runLater(Runnable)}, whose queue is unbounded.
+ *
+ * A task dispatched with a key replaces the pending task with the same
+ * key, at the position of the pending task. If the queue is full, the
+ * {@link Overflow} policy decides what happens to a new task.
+ *
+ * Only a single {@link Platform#runLater(Runnable)} is pending at any
+ * time, it runs the queued tasks for at most {@link #DRAIN_BUDGET} and
+ * is posted again if tasks remain, so pulses are not delayed by a long queue.
+ *
+ * The wait times and the amount of coalesced, dropped, merged and blocked
+ * tasks of all dispatchers are only counted in the {@link Metrics}. The
+ * amount of pending tasks of the shared dispatcher is published as gauge.
+ */
+public class FxDispatcher {
+
+	public static final int		DEFAULT_CAPACITY	= 1024;
+	public static final long	DRAIN_BUDGET		= 4000000L;	// nanoseconds per drain
+
+	/**
+	 * What happens to a new task, if the queue is full
+	 */
+	public enum Overflow {
+		/** The oldest pending task is dropped without being run */
+		DROP_OLDEST,
+		/** The dispatching thread waits, the FX-Thread is never blocked and exceeds the capacity instead */
+		BLOCK,
+		/** The task is run together with the youngest pending task, it can no longer be replaced by its key */
+		MERGE
+	}
+
+	private static FxDispatcher instance;
+
+	private final Logger				logger		= Logger.getLogger(getClass());
+	private final int					capacity;
+	private final Overflow				overflow;
+	private final ReentrantLock			lock		= new ReentrantLock();
+	private final Condition				notFull		= lock.newCondition();
+	private final ArrayDeque<Task>		queue		= new ArrayDeque<>();
+	private final Map<Object, Task>		keys		= new HashMap<>();
+	private final AtomicBoolean			scheduled	= new AtomicBoolean();
+
+	private final Metrics				metrics		= Metrics.getInstance();
+	private final Histogram				waits		= metrics.histogram(Metrics.FX_DISPATCH_WAIT);
+	private final AtomicLong			coalesced	= metrics.counter(Metrics.FX_DISPATCH_COALESCED);
+	private final AtomicLong			dropped		= metrics.counter(Metrics.FX_DISPATCH_DROPPED);
+	private final AtomicLong			merged		= metrics.counter(Metrics.FX_DISPATCH_MERGED);
+	private final AtomicLong			blocked		= metrics.counter(Metrics.FX_DISPATCH_BLOCKED);
+
+	private final Runnable drainer = new Runnable() {
+		@Override
+		public void run() {
+			drain();
+		}
+	};
+
+	/**
+	 * @param capacity	Maximal amount of pending tasks
+	 * @param overflow	{@link Overflow} policy for a full queue
+	 */
+	public FxDispatcher (int capacity, Overflow overflow) {
+		if (capacity < 1) {
+			throw new IllegalArgumentException("The capacity needs to be at least 1, got "+capacity);
+		}
+
+		this.capacity	= capacity;
+		this.overflow	= overflow;
+	}
+
+	/**
+	 * @return The {@link FxDispatcher} shared by the demo, it blocks the
+	 * 			dispatching threads if {@link #DEFAULT_CAPACITY} tasks are pending
+	 */
+	public static synchronized FxDispatcher getInstance () {
+		if (instance == null) {
+			final FxDispatcher shared = new FxDispatcher(DEFAULT_CAPACITY, Overflow.BLOCK);
+
+			Metrics.getInstance().gauge(Metrics.FX_DISPATCH_PENDING, new Metrics.Gauge() {
+				@Override
+				public long get() {
+					return shared.getPendingCount();
+				}
+			});
+			instance = shared;
+		}
+		return instance;
+	}
+
+	/**
+	 * Queues the given task, can be called by any thread
+	 * @param runnable	Task to run on the FX-Thread
+	 */
+	public void dispatch (Runnable runnable) {
+		dispatch(null, runnable);
+	}
+
+	/**
+	 * Queues the given task or replaces the pending task with the same key,
+	 * can be called by any thread
+	 *
+	 * @param key		Key of the task, e.g. the id of the updated car, or null
+	 * @param runnable	Task to run on the FX-Thread
+	 */
+	public void dispatch (Object key, Runnable runnable) {
+		boolean fxThread = Platform.isFxApplicationThread();
+
+		lock.lock();
+		try {
+			while (true) {
+				Task task = key != null ? keys.get(key) : null;
+
+				if (task != null) {
+					// keeps the position and the time it has been queued at
+					task.runnable = runnable;
+					coalesced.incrementAndGet();
+					return;
+				}
+
+				if (queue.size() < capacity || (overflow == Overflow.BLOCK && fxThread)) {
+					break;
+				}
+
+				switch (overflow) {
+					case DROP_OLDEST:
+						remove(queue.peekFirst());
+						dropped.incrementAndGet();
+						break;
+
+					case MERGE:
+						queue.peekLast().merge(runnable);
+						merged.incrementAndGet();
+						return;
+
+					case BLOCK:
+						blocked.incrementAndGet();
+						notFull.awaitUninterruptibly();
+						break;
+				}
+			}
+
+			Task task = new Task(key, runnable);
+			queue.addLast(task);
+
+			if (key != null) {
+				keys.put(key, task);
+			}
+
+		} finally {
+			lock.unlock();
+		}
+
+		if (scheduled.compareAndSet(false, true)) {
+			Platform.runLater(drainer);
+		}
+	}
+
+	/**
+	 * @return The amount of pending tasks
+	 */
+	public int getPendingCount () {
+		lock.lock();
+		try {
+			return queue.size();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public int getCapacity () {
+		return capacity;
+	}
+
+	public Overflow getOverflow () {
+		return overflow;
+	}
+
+	/**
+	 * Runs the queued tasks on the FX-Thread, until the queue is empty or the budget is used up
+	 */
+	private void drain () {
+		// tasks dispatched from now on post the drainer again
+		scheduled.set(false);
+
+		long start = System.nanoTime();
+
+		do {
+			Task task;
+
+			lock.lock();
+			try {
+				task = queue.peekFirst();
+
+				if (task == null) {
+					return;
+				}
+
+				remove(task);
+			} finally {
+				lock.unlock();
+			}
+
+			waits.record(System.nanoTime() - task.queued);
+			task.run(logger);
+
+		} while (System.nanoTime() - start < DRAIN_BUDGET);
+
+		if (getPendingCount() > 0 && scheduled.compareAndSet(false, true)) {
+			Platform.runLater(drainer);
+		}
+	}
+
+	/**
+	 * Removes the given task from the queue, needs to be called with the lock held
+	 */
+	private void remove (Task task) {
+		queue.remove(task);
+
+		if (task.key != null) {
+			keys.remove(task.key);
+		}
+
+		notFull.signal();
+	}
+
+	/**
+	 * Queued task with the tasks merged into it
+	 */
+	private static class Task {
+		final Object		key;
+		final long			queued	= System.nanoTime();
+		Runnable			runnable;
+		ArrayList<Runnable>	merged;
+
+		Task (Object key, Runnable runnable) {
+			this.key		= key;
+			this.runnable	= runnable;
+		}
+
+		void merge (Runnable runnable) {
+			if (merged == null) {
+				merged = new ArrayList<>();
+			}
+			merged.add(runnable);
+		}
+
+		/**
+		 * Runs the task and the merged tasks, a failing task does not prevent the others from running
+		 */
+		void run (Logger logger) {
+			run(runnable, logger);
+
+			if (merged != null) {
+				for (int i = 0; i < merged.size(); i++) {
+					run(merged.get(i), logger);
+				}
+			}
+		}
+
+		private static void run (Runnable runnable, Logger logger) {
+			try {
+				runnable.run();
+			} catch (RuntimeException e) {
+				logger.error("Failed to run "+runnable, e);
+			}
+		}
+	}
+}
@@ -0,0 +1,259 @@
+/*
+ * Copyright (c) 2013 Michael Watzko and IT-Designers GmbH.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.itd.maps.mapsforge.examples.fx.map;
+
+import javafx.animation.AnimationTimer;
+import javafx.beans.InvalidationListener;
+import javafx.beans.Observable;
+
+import de.itd.maps.mapsforge.MapItem;
+import de.itd.maps.mapsforge.MapsforgeMap;
+import de.itd.maps.mapsforge.examples.fx.render.MapViewport;
+
+/**
+ * Follows a {@link MapItem} with the map view. By default the view is
+ * centred on the {@link MapItem}. With a lookahead, the view leads it
+ * along its heading instead, so that the tiles in front of a moving
+ * {@link MapItem} are requested and cached before the {@link MapItem}
+ * reaches them, at the cost of the {@link MapItem} no longer being centred.
+ *
+ * The velocity is estimated from the positions of the followed {@link MapItem}
+ * during the last {@link #HISTORY_TIME}. The position is read once per pulse,
+ * after both latitude and longitude have been changed, and a sample is kept
+ * at most every {@link #SAMPLE_INTERVAL}, no matter how often it moves.
+ * The map view then follows an invisible lead, that is placed
+ * {@link #setLookahead(double)} seconds ahead, but at most
+ * {@link #setBudget(double)} of half the viewport away from the item.
+ *
+ * All methods need to be called by the FX-Thread.
+ */
+public class FollowPrefetcher {
+
+	public static final double	DEFAULT_LOOKAHEAD	= 0;			// seconds, centred
+	public static final double	DEFAULT_BUDGET		= 0.5;			// of half the viewport
+	public static final long	HISTORY_TIME		= 2000000000L;	// nanoseconds
+	public static final long	SAMPLE_INTERVAL		= 125000000L;	// nanoseconds
+
+	private static final int	HISTORY_SIZE	= (int)(HISTORY_TIME / SAMPLE_INTERVAL) + 1;
+
+	private final MapsforgeMap	map;
+	private final MapViewport	viewport	= new MapViewport();
+	private final Lead			lead		= new Lead();
+
+	private MapItem	item;
+	private MapItem	target;	// either the item or the lead
+	private boolean	moved;
+	private double	lookahead	= DEFAULT_LOOKAHEAD;
+	private double	budget		= DEFAULT_BUDGET;
+	private boolean	leadAdded;
+
+	// recent positions of the followed item, as ring
+	private final long[]	historyTime			= new long	[HISTORY_SIZE];
+	private final double[]	historyLatitude		= new double[HISTORY_SIZE];
+	private final double[]	historyLongitude	= new double[HISTORY_SIZE];
+	private int				historyHead;
+	private int				historySize;
+
+	private final InvalidationListener moveListener = new InvalidationListener() {
+		@Override
+		public void invalidated(Observable observable) {
+			// latitude and longitude are set one after the other, read them with the next pulse
+			moved = true;
+		}
+	};
+
+	private final AnimationTimer timer = new AnimationTimer() {
+		@Override
+		public void handle(long now) {
+			if (moved && target == lead) {
+				onMoved(now);
+			}
+		}
+	};
+
+	/**
+	 * @param map	{@link MapsforgeMap} whose view to lead
+	 */
+	public FollowPrefetcher (MapsforgeMap map) {
+		this.map = map;
+	}
+
+	/**
+	 * Starts to lead the followed {@link MapItem}
+	 */
+	public void start () {
+		timer.start();
+	}
+
+	/**
+	 * Stops to lead the followed {@link MapItem}
+	 */
+	public void stop () {
+		timer.stop();
+	}
+
+	/**
+	 * Follows the given {@link MapItem}, leads it if a lookahead is set
+	 *
+	 * @param item		{@link MapItem} to follow
+	 * @param priority	Priority of the follow request
+	 */
+	public void follow (MapItem item, int priority) {
+		if (this.item != item) {
+			detach();
+
+			this.item = item;
+			item.latitudeProperty() .addListener(moveListener);
+			item.longitudeProperty().addListener(moveListener);
+		}
+
+		if (lookahead > 0) {
+			if (!leadAdded) {
+				leadAdded = true;
+				map.addMapItem(lead);
+			}
+
+			target		= lead;
+			historySize	= 0;
+			onMoved(System.nanoTime());
+
+		} else {
+			target = item;
+		}
+
+		map.getMapView().follow(target, priority);
+	}
+
+	/**
+	 * Stops to follow the current {@link MapItem}
+	 */
+	public void unfollow () {
+		if (target != null && map.getMapView().isFollowing(target)) {
+			map.getMapView().unfollow();
+		}
+		detach();
+	}
+
+	/**
+	 * @param item	{@link MapItem} to check
+	 * @return Whether the given {@link MapItem} is followed
+	 */
+	public boolean isFollowing (MapItem item) {
+		return item != null && this.item == item && map.getMapView().isFollowing(target);
+	}
+
+	/**
+	 * @return The followed {@link MapItem} or null if none is followed
+	 */
+	public MapItem getFollowed () {
+		return isFollowing(item) ? item : null;
+	}
+
+	/**
+	 * @param seconds	How many seconds the view leads the followed {@link MapItem},
+	 * 					or 0 to centre it, used from the next {@link #follow(MapItem, int)}
+	 */
+	public void setLookahead (double seconds) {
+		this.lookahead = seconds;
+	}
+
+	/**
+	 * @param budget	Maximal distance of the view to the followed {@link MapItem},
+	 * 					as share of half the viewport between 0 and 1
+	 */
+	public void setBudget (double budget) {
+		this.budget = Math.max(0, Math.min(1, budget));
+	}
+
+	private void detach () {
+		if (item != null) {
+			item.latitudeProperty() .removeListener(moveListener);
+			item.longitudeProperty().removeListener(moveListener);
+			item = null;
+		}
+		target = null;
+	}
+
+	private void onMoved (long now) {
+		double lat = item.latitudeProperty() .get();
+		double lon = item.longitudeProperty().get();
+
+		moved = false;
+
+		if (historySize == 0 || now - historyTime[historyHead] >= SAMPLE_INTERVAL) {
+			historyHead						= (historyHead + 1) % HISTORY_SIZE;
+			historyTime		[historyHead]	= now;
+			historyLatitude	[historyHead]	= lat;
+			historyLongitude[historyHead]	= lon;
+			historySize						= Math.min(historySize + 1, HISTORY_SIZE);
+		}
+
+		updateViewport();
+		updateLead(now, lat, lon);
+	}
+
+	private void updateLead (long now, double lat, double lon) {
+		// oldest sample within the history time
+		int oldest = historyHead;
+		for (int i = 1; i < historySize; i++) {
+			int index = (historyHead - i + HISTORY_SIZE) % HISTORY_SIZE;
+			if (now - historyTime[index] > HISTORY_TIME) {
+				break;
+			}
+			oldest = index;
+		}
+
+		double seconds = (now - historyTime[oldest]) / 1e9;
+
+		if (seconds <= 0) {
+			lead.latitudeProperty() .set(lat);
+			lead.longitudeProperty().set(lon);
+			return;
+		}
+
+		double	x		= viewport.toX(lon);
+		double	y		= viewport.toY(lat);
+		double	dx		= (x - viewport.toX(historyLongitude[oldest])) / seconds * lookahead;
+		double	dy		= (y - viewport.toY(historyLatitude [oldest])) / seconds * lookahead;
+		double	max		= budget * Math.min(viewport.getWidth(), viewport.getHeight()) / 2;
+		double	length	= Math.sqrt(dx * dx + dy * dy);
+
+		if (length > max) {
+			dx *= max / length;
+			dy *= max / length;
+		}
+
+		lead.latitudeProperty() .set(viewport.toLatitude (y + dy));
+		lead.longitudeProperty().set(viewport.toLongitude(x + dx));
+	}
+
+	private void updateViewport () {
+		viewport.update(map, map.getLayoutBounds().getWidth(), map.getLayoutBounds().getHeight());
+	}
+
+	/**
+	 * Invisible {@link MapItem} the map view follows
+	 */
+	private static class Lead extends MapItem {
+		Lead () {
+			super(0, 0);
+			setVisible(false);
+			setMouseTransparent(true);
+		}
+	}
+}
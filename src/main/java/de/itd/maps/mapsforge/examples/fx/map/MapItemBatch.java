@@ -0,0 +1,161 @@
+/*
+ * Copyright (c) 2013 Michael Watzko and IT-Designers GmbH.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.itd.maps.mapsforge.examples.fx.map;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+import javafx.application.Platform;
+
+import org.apache.log4j.Logger;
+
+import de.itd.maps.mapsforge.MapItem;
+import de.itd.maps.mapsforge.MapsforgeMap;
+import de.itd.maps.mapsforge.examples.fx.dispatch.FxDispatcher;
+import de.itd.maps.mapsforge.examples.fx.render.MapViewport;
+
+/**
+ * Adds and removes many {@link MapItem}s at once. The {@link MapItem}s
+ * are validated by the calling thread, which may be any thread, and then
+ * published to the {@link MapsforgeMap} and its {@link MapItemIndex}
+ * within a single task of the shared {@link FxDispatcher}. The scene
+ * graph is therefore changed within one pulse, instead of once per
+ * {@link MapItem}.
+ */
+public class MapItemBatch {
+
+	private final Logger		logger	= Logger.getLogger(getClass());
+	private final MapsforgeMap	map;
+	private final MapItemIndex	index;
+
+	/**
+	 * @param map	{@link MapsforgeMap} to add the {@link MapItem}s to
+	 * @param index	{@link MapItemIndex} to add the {@link MapItem}s to, or null
+	 */
+	public MapItemBatch (MapsforgeMap map, MapItemIndex index) {
+		this.map	= map;
+		this.index	= index;
+	}
+
+	/**
+	 * Adds the given {@link MapItem}s to the {@link MapsforgeMap}, can be called
+	 * by any thread. {@link MapItem}s without a valid position and duplicates
+	 * are skipped.
+	 *
+	 * @param items	{@link MapItem}s to add
+	 * @return A {@link Future} of the amount of added {@link MapItem}s
+	 */
+	public Future<Integer> addAll (Collection<? extends MapItem> items) {
+		final MapItem[]	valid	= new MapItem[items.size()];
+		Set<MapItem>	seen	= Collections.newSetFromMap(new IdentityHashMap<MapItem, Boolean>());
+		int				count	= 0;
+
+		for (MapItem item : items) {
+			if (!isValid(item)) {
+				logger.warn("Skipping MapItem without a valid position: "+item);
+			} else if (seen.add(item)) {
+				valid[count++] = item;
+			} else {
+				logger.debug("Skipping duplicate MapItem: "+item);
+			}
+		}
+
+		final int size = count;
+
+		return publish(new Callable<Integer>() {
+			@Override
+			public Integer call() throws Exception {
+				for (int i = 0; i < size; i++) {
+					map.addMapItem(valid[i]);
+				}
+
+				if (index != null) {
+					index.addAll(valid, size);
+				}
+
+				return size;
+			}
+		});
+	}
+
+	/**
+	 * Removes the given {@link MapItem}s from the {@link MapsforgeMap},
+	 * can be called by any thread
+	 *
+	 * @param items	{@link MapItem}s to remove
+	 * @return A {@link Future} of the amount of given {@link MapItem}s
+	 */
+	public Future<Integer> removeAll (Collection<? extends MapItem> items) {
+		final ArrayList<MapItem> copy = new ArrayList<MapItem>(items);
+
+		return publish(new Callable<Integer>() {
+			@Override
+			public Integer call() throws Exception {
+				for (int i = 0; i < copy.size(); i++) {
+					if (index != null) {
+						index.remove(copy.get(i));
+					}
+					map.removeMapItem(copy.get(i));
+				}
+
+				return copy.size();
+			}
+		});
+	}
+
+	private Future<Integer> publish (final Callable<Integer> callable) {
+		// the callers may ignore the Future, so failures are logged here
+		FutureTask<Integer> task = new FutureTask<Integer>(new Callable<Integer>() {
+			@Override
+			public Integer call() throws Exception {
+				try {
+					return callable.call();
+				} catch (Exception e) {
+					logger.error("Failed to publish the MapItems", e);
+					throw e;
+				}
+			}
+		});
+
+		if (Platform.isFxApplicationThread()) {
+			task.run();
+		} else {
+			FxDispatcher.getInstance().dispatch(task);
+		}
+
+		return task;
+	}
+
+	private static boolean isValid (MapItem item) {
+		if (item == null) {
+			return false;
+		}
+
+		double lat = item.latitudeProperty() .get();
+		double lon = item.longitudeProperty().get();
+
+		return lat >= -MapViewport.MAX_LATITUDE && lat <= MapViewport.MAX_LATITUDE
+			&& lon >= -180 && lon <= 180;
+	}
+}
@@ -0,0 +1,488 @@
+/*
+ * Copyright (c) 2013 Michael Watzko and IT-Designers GmbH.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.itd.maps.mapsforge.examples.fx.map;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import javafx.animation.AnimationTimer;
+import javafx.beans.InvalidationListener;
+import javafx.beans.Observable;
+
+import de.itd.maps.mapsforge.MapItem;
+import de.itd.maps.mapsforge.MapsforgeMap;
+import de.itd.maps.mapsforge.examples.fx.render.MapViewport;
+
+/**
+ * Grid of {@link MapItem}s keyed by their latitude and longitude, that
+ * is updated as soon as a {@link MapItem} moves.
+ *
+ * Once per pulse, {@link MapItem}s outside of the visible area of the
+ * {@link MapsforgeMap} are made invisible, so they are neither drawn nor
+ * picked. Additionally, the grid answers which {@link MapItem}s are in
+ * a bounding box or under a pixel.
+ *
+ * A single listener is shared by all {@link MapItem}s, it finds the
+ * moved {@link MapItem} by the identity of its invalidated property.
+ * A {@link Listener} is told about added, moved and removed {@link MapItem}s,
+ * a {@link Filter} can hide visible {@link MapItem}s, e.g. to show clusters instead.
+ *
+ * All methods need to be called by the FX-Thread.
+ */
+public class MapItemIndex {
+
+	public static final double DEFAULT_CELL_SIZE	= 0.01;	// degree
+	public static final double CULLING_MARGIN		= 64;	// pixels
+
+	private final MapsforgeMap		map;
+	private final double			cellSize;
+	private final MapViewport		viewport	= new MapViewport();
+
+	private final Map<Long, ArrayList<MapItem>>	cells	= new HashMap<>();
+	private final Map<MapItem, Entry>			entries	= new IdentityHashMap<>();
+	private final Map<Observable, MapItem>		owners	= new IdentityHashMap<>();
+
+	private final ArrayList<MapItem>	moved		= new ArrayList<>();
+	private final ArrayList<MapItem>	query		= new ArrayList<>();
+	private Listener					itemListener;
+	private Filter						filter;
+	private boolean						culling		= true;
+	private boolean						dirty		= true;
+	private int							visibleCount;
+
+	private final AnimationTimer timer = new AnimationTimer() {
+		@Override
+		public void handle(long now) {
+			pulse();
+		}
+	};
+
+	private final InvalidationListener listener = new InvalidationListener() {
+		@Override
+		public void invalidated(Observable observable) {
+			MapItem item = owners.get(observable);
+
+			if (item != null) {
+				onMoved(item);
+			}
+		}
+	};
+
+	/**
+	 * @param map	{@link MapsforgeMap} the {@link MapItem}s are shown on
+	 */
+	public MapItemIndex (MapsforgeMap map) {
+		this(map, DEFAULT_CELL_SIZE);
+	}
+
+	/**
+	 * @param map		{@link MapsforgeMap} the {@link MapItem}s are shown on
+	 * @param cellSize	Width and height of a cell in degree
+	 */
+	public MapItemIndex (MapsforgeMap map, double cellSize) {
+		this.map		= map;
+		this.cellSize	= cellSize;
+	}
+
+	/**
+	 * Starts to cull the {@link MapItem}s once per pulse
+	 */
+	public void start () {
+		timer.start();
+	}
+
+	/**
+	 * Stops to cull the {@link MapItem}s
+	 */
+	public void stop () {
+		timer.stop();
+	}
+
+	/**
+	 * Adds the given {@link MapItem} to the index
+	 * @param item	{@link MapItem} to add
+	 */
+	public void add (MapItem item) {
+		if (entries.containsKey(item)) {
+			return;
+		}
+
+		Entry entry		= new Entry();
+		entry.cell		= getCell(item);
+		entry.visible	= item.isVisible();
+		entry.moved		= true;
+
+		entries.put(item, entry);
+		getOrCreateCell(entry.cell).add(item);
+
+		if (entry.visible) {
+			visibleCount++;
+		}
+
+		owners.put(item.latitudeProperty(),  item);
+		owners.put(item.longitudeProperty(), item);
+		item.latitudeProperty() .addListener(listener);
+		item.longitudeProperty().addListener(listener);
+
+		moved.add(item);
+
+		if (itemListener != null) {
+			itemListener.added(item);
+		}
+	}
+
+	/**
+	 * Adds the given {@link MapItem}s to the index
+	 * @param items	{@link MapItem}s to add
+	 * @param count	Amount of {@link MapItem}s to add from the start of the array
+	 */
+	public void addAll (MapItem[] items, int count) {
+		moved.ensureCapacity(moved.size() + count);
+
+		for (int i = 0; i < count; i++) {
+			add(items[i]);
+		}
+	}
+
+	/**
+	 * Removes the given {@link MapItem} from the index, it is made visible again
+	 * @param item	{@link MapItem} to remove
+	 */
+	public void remove (MapItem item) {
+		Entry entry = entries.remove(item);
+
+		if (entry == null) {
+			return;
+		}
+
+		item.latitudeProperty() .removeListener(listener);
+		item.longitudeProperty().removeListener(listener);
+		owners.remove(item.latitudeProperty());
+		owners.remove(item.longitudeProperty());
+
+		removeFromCell(entry.cell, item);
+
+		if (entry.visible) {
+			visibleCount--;
+		}
+
+		item.setVisible(true);
+
+		if (itemListener != null) {
+			itemListener.removed(item);
+		}
+	}
+
+	/**
+	 * @param culling	Whether {@link MapItem}s outside of the visible area are made invisible
+	 */
+	public void setCulling (boolean culling) {
+		this.culling	= culling;
+		this.dirty		= true;
+	}
+
+	/**
+	 * Sets the {@link Listener} and tells it about all {@link MapItem}s already in the index
+	 * @param listener	{@link Listener} to set or null
+	 */
+	public void setListener (Listener listener) {
+		this.itemListener = listener;
+
+		if (listener != null) {
+			for (MapItem item : entries.keySet()) {
+				listener.added(item);
+			}
+		}
+	}
+
+	/**
+	 * @param filter	{@link Filter} to hide visible {@link MapItem}s with or null
+	 */
+	public void setFilter (Filter filter) {
+		this.filter	= filter;
+		this.dirty	= true;
+	}
+
+	/**
+	 * Checks the visibility of all {@link MapItem}s with the next pulse,
+	 * e.g. because the decisions of the {@link Filter} have changed
+	 */
+	public void invalidate () {
+		dirty = true;
+	}
+
+	/**
+	 * Checks the visibility of the given {@link MapItem} with the next pulse
+	 * @param item	{@link MapItem} to check
+	 */
+	public void invalidate (MapItem item) {
+		Entry entry = entries.get(item);
+
+		if (entry != null && !entry.moved) {
+			entry.moved = true;
+			moved.add(item);
+		}
+	}
+
+	/**
+	 * @return The amount of {@link MapItem}s in the index
+	 */
+	public int size () {
+		return entries.size();
+	}
+
+	/**
+	 * @return The amount of visible {@link MapItem}s in the index
+	 */
+	public int getVisibleCount () {
+		return visibleCount;
+	}
+
+	/**
+	 * Adds all {@link MapItem}s in the given bounding box to the result
+	 *
+	 * @param minLat	Most southern latitude
+	 * @param minLon	Most western longitude
+	 * @param maxLat	Most northern latitude
+	 * @param maxLon	Most eastern longitude
+	 * @param result	{@link Collection} to add the {@link MapItem}s to
+	 * @return The given result
+	 */
+	public <C extends Collection<? super MapItem>> C getItems (double minLat, double minLon, double maxLat, double maxLon, C result) {
+		int fromLat	= (int)Math.floor(minLat / cellSize);
+		int toLat	= (int)Math.floor(maxLat / cellSize);
+		int fromLon	= (int)Math.floor(minLon / cellSize);
+		int toLon	= (int)Math.floor(maxLon / cellSize);
+
+		// looks up the cells of the box if there are fewer than occupied cells, otherwise scans the occupied cells
+		if ((long)(toLat - fromLat + 1) * (toLon - fromLon + 1) < cells.size()) {
+			for (int lat = fromLat; lat <= toLat; lat++) {
+				for (int lon = fromLon; lon <= toLon; lon++) {
+					ArrayList<MapItem> cell = cells.get(getCell(lat, lon));
+
+					if (cell != null) {
+						addContained(cell, minLat, minLon, maxLat, maxLon, result);
+					}
+				}
+			}
+		} else {
+			for (ArrayList<MapItem> cell : cells.values()) {
+				addContained(cell, minLat, minLon, maxLat, maxLon, result);
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * @param x			x position relative to the map
+	 * @param y			y position relative to the map
+	 * @param radius	Radius in pixels
+	 * @return The {@link MapItem} nearest to the given pixel of the
+	 * 			{@link MapsforgeMap} within the given radius, or null
+	 */
+	public MapItem getItemAt (double x, double y, double radius) {
+		updateViewport();
+
+		query.clear();
+		getItems(
+				viewport.toLatitude	(y + radius),
+				viewport.toLongitude(x - radius),
+				viewport.toLatitude	(y - radius),
+				viewport.toLongitude(x + radius),
+				query
+				);
+
+		MapItem	nearest		= null;
+		double	distance	= radius * radius;
+
+		for (int i = 0; i < query.size(); i++) {
+			MapItem item	= query.get(i);
+			double	dx		= viewport.toX(item.longitudeProperty().get()) - x;
+			double	dy		= viewport.toY(item.latitudeProperty() .get()) - y;
+			double	d		= dx * dx + dy * dy;
+
+			if (d <= distance) {
+				distance	= d;
+				nearest		= item;
+			}
+		}
+
+		query.clear();
+		return nearest;
+	}
+
+	private void onMoved (MapItem item) {
+		Entry	entry	= entries.get(item);
+		long	cell	= getCell(item);
+
+		if (entry.cell != cell) {
+			removeFromCell(entry.cell, item);
+			getOrCreateCell(cell).add(item);
+			entry.cell = cell;
+		}
+
+		if (!entry.moved) {
+			entry.moved = true;
+			moved.add(item);
+		}
+
+		if (itemListener != null) {
+			itemListener.moved(item);
+		}
+	}
+
+	private void pulse () {
+		if (updateViewport() || dirty) {
+			dirty = false;
+
+			// check all items, not only the moved ones
+			for (Map.Entry<MapItem, Entry> entry : entries.entrySet()) {
+				updateVisibility(entry.getKey(), entry.getValue());
+			}
+
+		} else {
+			for (int i = 0; i < moved.size(); i++) {
+				Entry entry = entries.get(moved.get(i));
+
+				if (entry != null) {
+					updateVisibility(moved.get(i), entry);
+				}
+			}
+		}
+
+		moved.clear();
+	}
+
+	private void updateVisibility (MapItem item, Entry entry) {
+		entry.moved = false;
+
+		boolean visible = (!culling || viewport.isVisible(
+				viewport.toX(item.longitudeProperty().get()),
+				viewport.toY(item.latitudeProperty() .get()),
+				CULLING_MARGIN
+				)) && (filter == null || filter.isShown(item));
+
+		if (entry.visible != visible) {
+			entry.visible	= visible;
+			visibleCount	+= visible ? 1 : -1;
+			item.setVisible(visible);
+		}
+	}
+
+	private boolean updateViewport () {
+		return viewport.update(map, map.getLayoutBounds().getWidth(), map.getLayoutBounds().getHeight());
+	}
+
+	private void addContained (ArrayList<MapItem> cell, double minLat, double minLon, double maxLat, double maxLon, Collection<? super MapItem> result) {
+		for (int i = 0; i < cell.size(); i++) {
+			MapItem item	= cell.get(i);
+			double	lat		= item.latitudeProperty() .get();
+			double	lon		= item.longitudeProperty().get();
+
+			if (lat >= minLat && lat <= maxLat && lon >= minLon && lon <= maxLon) {
+				result.add(item);
+			}
+		}
+	}
+
+	private ArrayList<MapItem> getOrCreateCell (long key) {
+		ArrayList<MapItem> cell = cells.get(key);
+
+		if (cell == null) {
+			cell = new ArrayList<>();
+			cells.put(key, cell);
+		}
+
+		return cell;
+	}
+
+	private void removeFromCell (long key, MapItem item) {
+		ArrayList<MapItem> cell = cells.get(key);
+
+		for (Iterator<MapItem> iterator = cell.iterator(); iterator.hasNext();) {
+			if (iterator.next() == item) {
+				iterator.remove();
+				break;
+			}
+		}
+
+		if (cell.isEmpty()) {
+			cells.remove(key);
+		}
+	}
+
+	private long getCell (MapItem item) {
+		return getCell(
+				(int)Math.floor(item.latitudeProperty() .get() / cellSize),
+				(int)Math.floor(item.longitudeProperty().get() / cellSize)
+				);
+	}
+
+	private static long getCell (int lat, int lon) {
+		return ((long)lat << 32) | (lon & 0xFFFFFFFFL);
+	}
+
+	/**
+	 * Is told about the {@link MapItem}s of the index by the FX-Thread
+	 */
+	public interface Listener {
+
+		/**
+		 * @param item	{@link MapItem} that has been added to the index
+		 */
+		void added (MapItem item);
+
+		/**
+		 * Called as soon as the latitude or the longitude has changed
+		 * @param item	{@link MapItem} that has moved
+		 */
+		void moved (MapItem item);
+
+		/**
+		 * @param item	{@link MapItem} that has been removed from the index
+		 */
+		void removed (MapItem item);
+	}
+
+	/**
+	 * Decides, whether a {@link MapItem} within the visible area is shown
+	 */
+	public interface Filter {
+
+		/**
+		 * Called by the FX-Thread, whenever the visibility of the {@link MapItem} is checked
+		 * @param item	{@link MapItem} to check
+		 * @return Whether the {@link MapItem} is shown
+		 */
+		boolean isShown (MapItem item);
+	}
+
+	/**
+	 * State of a {@link MapItem} in the index
+	 */
+	private static class Entry {
+		long	cell;
+		boolean	visible;
+		boolean	moved;
+	}
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2013 Michael Watzko and IT-Designers GmbH.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.itd.maps.mapsforge.examples.fx.map;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+import javafx.concurrent.Task;
+
+import de.itd.maps.mapsforge.MapsforgeMap;
+
+/**
+ * Checks a map file in the background, with cancellation, before it is loaded.
+ *
+ * Only the header is read, to fail early on a missing or foreign file.
+ * {@link MapsforgeMap#loadMap(File)} opens and indexes the file and sets
+ * up the map view in a single call on the FX-Thread, which the demo has
+ * no way to split. It is supposed to be called on success, e.g. by the
+ * handler set with {@link #setOnSucceeded(javafx.event.EventHandler)},
+ * and still blocks the FX-Thread while the file is indexed.
+ */
+public class MapLoader extends Task<File> {
+
+	public static final byte[] MAGIC = "mapsforge binary OSM".getBytes(Charset.forName("US-ASCII"));
+
+	private final File file;
+
+	/**
+	 * @param file	Map file to load
+	 */
+	public MapLoader (File file) {
+		this.file = file;
+		updateTitle("Loading "+file.getName());
+	}
+
+	/**
+	 * @return The map file to load
+	 */
+	public File getFile () {
+		return file;
+	}
+
+	@Override
+	protected File call() throws Exception {
+		updateMessage("Checking "+file.getName());
+
+		byte[] header = new byte[MAGIC.length];
+
+		DataInputStream stream = new DataInputStream(new FileInputStream(file));
+		try {
+			stream.readFully(header);
+		} catch (EOFException e) {
+			throw new IOException("Not a map file: "+file, e);
+		} finally {
+			stream.close();
+		}
+
+		if (!Arrays.equals(header, MAGIC)) {
+			throw new IOException("Not a map file: "+file);
+		}
+
+		if (isCancelled()) {
+			return null;
+		}
+
+		updateMessage("Checked "+file.getName());
+		return file;
+	}
+}
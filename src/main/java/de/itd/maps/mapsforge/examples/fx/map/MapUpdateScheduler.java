@@ -0,0 +1,142 @@
+/*
+ * Copyright (c) 2013 Michael Watzko and IT-Designers GmbH.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.itd.maps.mapsforge.examples.fx.map;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javafx.animation.AnimationTimer;
+import javafx.beans.InvalidationListener;
+import javafx.beans.Observable;
+
+import de.itd.maps.mapsforge.MapsforgeMap;
+import de.itd.maps.mapsforge.examples.fx.metrics.Histogram;
+import de.itd.maps.mapsforge.examples.fx.metrics.Metrics;
+
+/**
+ * Coalesces update requests for a {@link MapsforgeMap}, so that
+ * {@link MapsforgeMap#updateMap(boolean)} is called at most once
+ * per pulse, no matter how many requests were made in between.
+ *
+ * The durations of the updates are recorded as {@link Metrics#MAP_UPDATE}
+ * and, per zoom level, with {@link Metrics#MAP_UPDATE_ZOOM} as prefix.
+ */
+public class MapUpdateScheduler {
+
+	private final MapsforgeMap		map;
+	private final AtomicBoolean		dirty			= new AtomicBoolean();
+	private final AtomicLong		requestCount	= new AtomicLong();
+
+	private final Metrics			metrics			= Metrics.getInstance();
+	private final Histogram			durations		= metrics.histogram(Metrics.MAP_UPDATE);
+	private final Histogram[]		zoomDurations	= new Histogram[Byte.MAX_VALUE + 1];
+	private volatile long			updateCount;
+
+	private final AnimationTimer timer = new AnimationTimer() {
+		@Override
+		public void handle(long now) {
+			if (dirty.getAndSet(false)) {
+				long start = System.nanoTime();
+				map.updateMap(false);
+				long duration = System.nanoTime() - start;
+
+				updateCount++;
+				durations.record(duration);
+				getZoomDurations().record(duration);
+			}
+		}
+	};
+
+	private final InvalidationListener listener = new InvalidationListener() {
+		@Override
+		public void invalidated(Observable observable) {
+			requestUpdate();
+		}
+	};
+
+	/**
+	 * @param map	{@link MapsforgeMap} to update
+	 */
+	public MapUpdateScheduler (MapsforgeMap map) {
+		this.map = map;
+	}
+
+	/**
+	 * Starts to update the map, needs to be called by the FX-Thread
+	 */
+	public void start () {
+		timer.start();
+	}
+
+	/**
+	 * Stops to update the map, needs to be called by the FX-Thread
+	 */
+	public void stop () {
+		timer.stop();
+	}
+
+	/**
+	 * Marks the map as dirty, it will be updated with the next
+	 * pulse, can be called by any thread
+	 */
+	public void requestUpdate () {
+		requestCount.incrementAndGet();
+		dirty.set(true);
+	}
+
+	/**
+	 * @return An {@link InvalidationListener} that requests an update on each invalidation
+	 */
+	public InvalidationListener getRequestListener () {
+		return listener;
+	}
+
+	/**
+	 * @return The amount of requested updates
+	 */
+	public long getRequestCount () {
+		return requestCount.get();
+	}
+
+	/**
+	 * @return The amount of performed updates
+	 */
+	public long getUpdateCount () {
+		return updateCount;
+	}
+
+	/**
+	 * @return The amount of requests, that did not cause an update on their own
+	 */
+	public long getCoalescedCount () {
+		// a request that is still pending is not coalesced yet
+		return Math.max(0, getRequestCount() - getUpdateCount() - (dirty.get() ? 1 : 0));
+	}
+
+	private Histogram getZoomDurations () {
+		int			zoom		= map.getMapView().zoomProperty().getValue().byteValue() & Byte.MAX_VALUE;
+		Histogram	histogram	= zoomDurations[zoom];
+
+		if (histogram == null) {
+			histogram			= metrics.histogram(Metrics.MAP_UPDATE_ZOOM + zoom);
+			zoomDurations[zoom]	= histogram;
+		}
+
+		return histogram;
+	}
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2013 Michael Watzko and IT-Designers GmbH.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.itd.maps.mapsforge.examples.fx.map;
+
+import java.util.Locale;
+
+import javafx.util.StringConverter;
+
+/**
+ * Converts between a memory budget in megabytes and the amount of
+ * tiles a memory tile cache may hold. A tile is assumed to be a
+ * bitmap of {@link #TILE_SIZE} x {@link #TILE_SIZE} pixels with
+ * {@link #BYTES_PER_PIXEL} bytes each.
+ */
+public final class TileCacheBudget {
+
+	public static final int TILE_SIZE		= 256;
+	public static final int BYTES_PER_PIXEL	= 4;
+	public static final int TILE_BYTES		= TILE_SIZE * TILE_SIZE * BYTES_PER_PIXEL;
+	public static final int MEGABYTE		= 1024 * 1024;
+
+	private TileCacheBudget () {
+
+	}
+
+	/**
+	 * @param megabytes	Budget in megabytes
+	 * @return The amount of tiles that fit into the budget
+	 */
+	public static int toTiles (double megabytes) {
+		if (megabytes <= 0) {
+			return 0;
+		}
+		return (int)Math.min(Integer.MAX_VALUE, (long)(megabytes * MEGABYTE) / TILE_BYTES);
+	}
+
+	/**
+	 * @param tiles	Amount of tiles
+	 * @return The estimated size of the given amount of tiles in megabytes
+	 */
+	public static double toMegabytes (long tiles) {
+		return (double)tiles * TILE_BYTES / MEGABYTE;
+	}
+
+	/**
+	 * A tile count shown by the converter does not always convert back to
+	 * the same count, so the converted value must only be written back after
+	 * the budget has been edited.
+	 *
+	 * @return A {@link StringConverter} that shows a tile count as budget in
+	 *         megabytes with one decimal and converts an entered budget back
+	 *         to a tile count
+	 */
+	public static StringConverter<Number> megabyteConverter () {
+		return new StringConverter<Number>() {
+			@Override
+			public String toString(Number tiles) {
+				if (tiles == null) {
+					return "";
+				}
+				return String.format(Locale.ROOT, "%.1f", toMegabytes(tiles.longValue()));
+			}
+
+			@Override
+			public Number fromString(String megabytes) {
+				if (megabytes == null || megabytes.trim().isEmpty()) {
+					return 0;
+				}
+				return toTiles(Double.parseDouble(megabytes.trim()));
+			}
+		};
+	}
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) 2013 Michael Watzko and IT-Designers GmbH.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.itd.maps.mapsforge.examples.fx.metrics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javafx.animation.AnimationTimer;
+
+/**
+ * Publishes {@link Metrics.Gauge}s of state that is owned by the FX-Thread.
+ * The sources are read by the FX-Thread on each pulse, the {@link Metrics}
+ * and therefore JMX only see the last published value.
+ */
+public class FxGauges {
+
+	private final List<Metrics.Gauge>	sources	= new ArrayList<>();
+	private final List<AtomicLong>		values	= new ArrayList<>();
+
+	private final AnimationTimer timer = new AnimationTimer() {
+		@Override
+		public void handle(long now) {
+			publish();
+		}
+	};
+
+	/**
+	 * Adds a {@link Metrics.Gauge} of the given name to the {@link Metrics},
+	 * needs to be called by the FX-Thread
+	 * @param name		Name of the {@link Metrics.Gauge}
+	 * @param source	{@link Metrics.Gauge} to read on the FX-Thread
+	 */
+	public void gauge (String name, Metrics.Gauge source) {
+		final AtomicLong value = new AtomicLong(source.get());
+
+		sources.add(source);
+		values .add(value);
+
+		Metrics.getInstance().gauge(name, new Metrics.Gauge() {
+			@Override
+			public long get() {
+				return value.get();
+			}
+		});
+	}
+
+	/**
+	 * Starts to publish the values on each pulse, needs to be called by the FX-Thread
+	 */
+	public void start () {
+		publish();
+		timer.start();
+	}
+
+	/**
+	 * Stops to publish the values, needs to be called by the FX-Thread
+	 */
+	public void stop () {
+		timer.stop();
+	}
+
+	private void publish () {
+		for (int i = 0; i < sources.size(); i++) {
+			values.get(i).set(sources.get(i).get());
+		}
+	}
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) 2013 Michael Watzko and IT-Designers GmbH.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.itd.maps.mapsforge.examples.fx.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock free histogram of non-negative values, e.g. durations in nanoseconds.
+ * Values are counted in buckets of powers of two, so recording a value
+ * costs a few atomic increments and percentiles are exact within a factor of two.
+ * Can be used by any thread.
+ */
+public class Histogram {
+
+	public static final int BUCKETS = 64;
+
+	private final AtomicLongArray	buckets	= new AtomicLongArray(BUCKETS);
+	private final AtomicLong		count	= new AtomicLong();
+	private final AtomicLong		sum		= new AtomicLong();
+	private final AtomicLong		max		= new AtomicLong();
+
+	/**
+	 * @param value	Value to record, negative values are recorded as 0
+	 */
+	public void record (long value) {
+		if (value < 0) {
+			value = 0;
+		}
+
+		buckets.incrementAndGet(getBucket(value));
+		count	.incrementAndGet();
+		sum		.addAndGet(value);
+
+		long current;
+		while (value > (current = max.get())) {
+			if (max.compareAndSet(current, value)) {
+				break;
+			}
+		}
+	}
+
+	/**
+	 * @return The amount of recorded values
+	 */
+	public long getCount () {
+		return count.get();
+	}
+
+	/**
+	 * @return A copy of the current state, which might be slightly inconsistent
+	 *         if values are recorded at the same time
+	 */
+	public HistogramSnapshot snapshot () {
+		long[] copy = new long[BUCKETS];
+		for (int i = 0; i < BUCKETS; i++) {
+			copy[i] = buckets.get(i);
+		}
+		return new HistogramSnapshot(copy, count.get(), sum.get(), max.get());
+	}
+
+	/**
+	 * @param value	Non-negative value
+	 * @return The bucket of the value, bucket i holds the values from 2^(i-1) to 2^i - 1
+	 */
+	static int getBucket (long value) {
+		return 64 - Long.numberOfLeadingZeros(value);
+	}
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 2013 Michael Watzko and IT-Designers GmbH.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.itd.maps.mapsforge.examples.fx.metrics;
+
+/**
+ * Immutable state of a {@link Histogram} at a point in time
+ */
+public class HistogramSnapshot {
+
+	private final long[]	buckets;
+	private final long		count;
+	private final long		sum;
+	private final long		max;
+
+	HistogramSnapshot (long[] buckets, long count, long sum, long max) {
+		this.buckets	= buckets;
+		this.count		= count;
+		this.sum		= sum;
+		this.max		= max;
+	}
+
+	/**
+	 * @return The amount of recorded values
+	 */
+	public long getCount () {
+		return count;
+	}
+
+	/**
+	 * @return The sum of all recorded values
+	 */
+	public long getSum () {
+		return sum;
+	}
+
+	/**
+	 * @return The largest recorded value
+	 */
+	public long getMax () {
+		return max;
+	}
+
+	/**
+	 * @return The average of the recorded values, or 0 if there are none
+	 */
+	public double getMean () {
+		return count > 0 ? (double)sum / count : 0;
+	}
+
+	/**
+	 * @param quantile	Quantile between 0 and 1
+	 * @return An upper bound of the value at the given quantile, or 0 if there are no values
+	 */
+	public long getPercentile (double quantile) {
+		long total = 0;
+		for (long bucket : buckets) {
+			total += bucket;
+		}
+
+		if (total == 0) {
+			return 0;
+		}
+
+		long rank	= Math.max(1, (long)Math.ceil(quantile * total));
+		long seen	= 0;
+
+		for (int i = 0; i < buckets.length; i++) {
+			seen += buckets[i];
+
+			if (seen >= rank) {
+				return i == 0 ? 0 : Math.min(max, i == 63 ? Long.MAX_VALUE : (1L << i) - 1);
+			}
+		}
+
+		return max;
+	}
+
+	@Override
+	public String toString() {
+		return "count="+count+", mean="+(long)getMean()+", p50="+getPercentile(0.5)+", p99="+getPercentile(0.99)+", max="+max;
+	}
+}
@@ -0,0 +1,217 @@
+/*
+ * Copyright (c) 2013 Michael Watzko and IT-Designers GmbH.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.itd.maps.mapsforge.examples.fx.metrics;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.JMException;
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+
+import org.apache.log4j.Logger;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+
+/**
+ * Registry of named counters, gauges and {@link Histogram}s of the demo.
+ *
+ * Recording is cheap and lock free, so it can be done on the FX-Thread
+ * for each pulse or map update. The values are read as {@link MetricsSnapshot}
+ * by the side panel and the stress test, or through JMX by the
+ * {@link MetricsMXBean} registered as {@link #OBJECT_NAME}.
+ * Durations are recorded in nanoseconds.
+ */
+public class Metrics implements MetricsMXBean {
+
+	public static final String OBJECT_NAME				= "de.itd.maps.mapsforge.examples.fx:type=Metrics";
+
+	public static final String MAP_UPDATE				= "map.update";
+	public static final String MAP_UPDATE_ZOOM			= "map.update.zoom.";
+	public static final String MAP_ITEMS				= "map.items";
+	public static final String MAP_ITEMS_VISIBLE		= "map.items.visible";
+	public static final String TILE_CACHE_MEMORY_TILES	= "tileCache.memory.tiles";
+	public static final String TILE_CACHE_FILE_TILES	= "tileCache.file.tiles";
+	public static final String MOVEMENT_APPLIED			= "movement.applied";
+	public static final String OVERLAY_DRAW				= "overlay.draw";
+	public static final String FX_PULSE					= "fx.pulse";
+	public static final String FX_DISPATCH_WAIT			= "fx.dispatch.wait";
+	public static final String FX_DISPATCH_PENDING		= "fx.dispatch.pending";
+	public static final String FX_DISPATCH_COALESCED	= "fx.dispatch.coalesced";
+	public static final String FX_DISPATCH_DROPPED		= "fx.dispatch.dropped";
+	public static final String FX_DISPATCH_MERGED		= "fx.dispatch.merged";
+	public static final String FX_DISPATCH_BLOCKED		= "fx.dispatch.blocked";
+	public static final String GC_PAUSE					= "gc.pause";
+
+	private static Metrics instance;
+
+	private final Logger							logger		= Logger.getLogger(getClass());
+	private final ConcurrentMap<String, Histogram>	histograms	= new ConcurrentHashMap<>();
+	private final ConcurrentMap<String, AtomicLong>	counters	= new ConcurrentHashMap<>();
+	private final ConcurrentMap<String, Gauge>		gauges		= new ConcurrentHashMap<>();
+
+	/**
+	 * @return The {@link Metrics} of this JVM, registered with JMX on first access
+	 */
+	public static synchronized Metrics getInstance () {
+		if (instance == null) {
+			instance = new Metrics();
+			instance.register();
+			instance.monitorGarbageCollection();
+		}
+		return instance;
+	}
+
+	private Metrics () {
+	}
+
+	/**
+	 * @param name	Name of the {@link Histogram}
+	 * @return The {@link Histogram} with the given name, created if necessary
+	 */
+	public Histogram histogram (String name) {
+		Histogram histogram = histograms.get(name);
+
+		if (histogram == null) {
+			Histogram created	= new Histogram();
+			histogram			= histograms.putIfAbsent(name, created);
+
+			if (histogram == null) {
+				histogram = created;
+			}
+		}
+
+		return histogram;
+	}
+
+	/**
+	 * @param name	Name of the counter
+	 * @return The counter with the given name, created if necessary
+	 */
+	public AtomicLong counter (String name) {
+		AtomicLong counter = counters.get(name);
+
+		if (counter == null) {
+			AtomicLong created	= new AtomicLong();
+			counter				= counters.putIfAbsent(name, created);
+
+			if (counter == null) {
+				counter = created;
+			}
+		}
+
+		return counter;
+	}
+
+	/**
+	 * Sets the {@link Gauge} of the given name, a previous one is replaced
+	 * @param name	Name of the {@link Gauge}
+	 * @param gauge	{@link Gauge} to read the value from
+	 */
+	public void gauge (String name, Gauge gauge) {
+		gauges.put(name, gauge);
+	}
+
+	/**
+	 * @param name	Name of the {@link Gauge} to remove
+	 */
+	public void removeGauge (String name) {
+		gauges.remove(name);
+	}
+
+	/**
+	 * @return The current values of all counters, gauges and {@link Histogram}s
+	 */
+	public MetricsSnapshot snapshot () {
+		Map<String, Long>				counterValues	= new TreeMap<>();
+		Map<String, Long>				gaugeValues		= new TreeMap<>();
+		Map<String, HistogramSnapshot>	histogramValues	= new TreeMap<>();
+
+		for (Map.Entry<String, AtomicLong> entry : counters.entrySet()) {
+			counterValues.put(entry.getKey(), entry.getValue().get());
+		}
+
+		for (Map.Entry<String, Gauge> entry : gauges.entrySet()) {
+			try {
+				gaugeValues.put(entry.getKey(), entry.getValue().get());
+			} catch (RuntimeException e) {
+				logger.debug("Failed to read gauge "+entry.getKey(), e);
+			}
+		}
+
+		for (Map.Entry<String, Histogram> entry : histograms.entrySet()) {
+			histogramValues.put(entry.getKey(), entry.getValue().snapshot());
+		}
+
+		return new MetricsSnapshot(System.currentTimeMillis(), counterValues, gaugeValues, histogramValues);
+	}
+
+	@Override
+	public Map<String, Long> getValues() {
+		return snapshot().toMap();
+	}
+
+	private void register () {
+		try {
+			ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName(OBJECT_NAME));
+		} catch (JMException e) {
+			logger.warn("Failed to register the metrics with JMX", e);
+		}
+	}
+
+	private void monitorGarbageCollection () {
+		final Histogram pause = histogram(GC_PAUSE);
+
+		NotificationListener listener = new NotificationListener() {
+			@Override
+			public void handleNotification(Notification notification, Object handback) {
+				if (GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION.equals(notification.getType())) {
+					GarbageCollectionNotificationInfo info = GarbageCollectionNotificationInfo.from((CompositeData)notification.getUserData());
+					pause.record(TimeUnit.MILLISECONDS.toNanos(info.getGcInfo().getDuration()));
+				}
+			}
+		};
+
+		for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+			if (gc instanceof NotificationEmitter) {
+				((NotificationEmitter)gc).addNotificationListener(listener, null, null);
+			}
+		}
+	}
+
+	/**
+	 * Value that is read whenever a {@link MetricsSnapshot} is taken,
+	 * possibly by another thread than the one that changes it
+	 */
+	public interface Gauge {
+
+		/**
+		 * @return The current value
+		 */
+		long get();
+	}
+}
@@ -0,0 +1,32 @@
+/*
+ * Copyright (c) 2013 Michael Watzko and IT-Designers GmbH.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.itd.maps.mapsforge.examples.fx.metrics;
+
+import java.util.Map;
+
+/**
+ * Exposes the {@link Metrics} through JMX
+ */
+public interface MetricsMXBean {
+
+	/**
+	 * @return The counters, gauges and {@link Histogram} summaries by name
+	 * @see MetricsSnapshot#toMap()
+	 */
+	Map<String, Long> getValues();
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2013 Michael Watzko and IT-Designers GmbH.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.itd.maps.mapsforge.examples.fx.metrics;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Immutable values of the {@link Metrics} at a point in time
+ */
+public class MetricsSnapshot {
+
+	private static final HistogramSnapshot EMPTY = new HistogramSnapshot(new long[Histogram.BUCKETS], 0, 0, 0);
+
+	private final long								time;
+	private final Map<String, Long>					counters;
+	private final Map<String, Long>					gauges;
+	private final Map<String, HistogramSnapshot>	histograms;
+
+	MetricsSnapshot (long time, Map<String, Long> counters, Map<String, Long> gauges, Map<String, HistogramSnapshot> histograms) {
+		this.time		= time;
+		this.counters	= Collections.unmodifiableMap(counters);
+		this.gauges		= Collections.unmodifiableMap(gauges);
+		this.histograms	= Collections.unmodifiableMap(histograms);
+	}
+
+	/**
+	 * @return The time the snapshot was taken at in milliseconds
+	 */
+	public long getTime () {
+		return time;
+	}
+
+	/**
+	 * @param name	Name of the counter
+	 * @return The value of the counter or 0 if there is none
+	 */
+	public long getCounter (String name) {
+		Long value = counters.get(name);
+		return value != null ? value : 0;
+	}
+
+	/**
+	 * @param name	Name of the gauge
+	 * @return The value of the gauge or 0 if there is none
+	 */
+	public long getGauge (String name) {
+		Long value = gauges.get(name);
+		return value != null ? value : 0;
+	}
+
+	/**
+	 * @param name	Name of the histogram
+	 * @return The {@link HistogramSnapshot}, empty if there is no histogram of that name
+	 */
+	public HistogramSnapshot getHistogram (String name) {
+		HistogramSnapshot histogram = histograms.get(name);
+		return histogram != null ? histogram : EMPTY;
+	}
+
+	/**
+	 * @return All counters by name
+	 */
+	public Map<String, Long> getCounters () {
+		return counters;
+	}
+
+	/**
+	 * @return All gauges by name
+	 */
+	public Map<String, Long> getGauges () {
+		return gauges;
+	}
+
+	/**
+	 * @return All {@link HistogramSnapshot}s by name
+	 */
+	public Map<String, HistogramSnapshot> getHistograms () {
+		return histograms;
+	}
+
+	/**
+	 * @return The counters and gauges by name, each histogram as
+	 *         count, mean, p50, p99 and max with its name as prefix
+	 */
+	public Map<String, Long> toMap () {
+		Map<String, Long> values = new TreeMap<>();
+		values.putAll(counters);
+		values.putAll(gauges);
+
+		for (Map.Entry<String, HistogramSnapshot> entry : histograms.entrySet()) {
+			HistogramSnapshot histogram = entry.getValue();
+			values.put(entry.getKey() + ".count",	histogram.getCount());
+			values.put(entry.getKey() + ".mean",	(long)histogram.getMean());
+			values.put(entry.getKey() + ".p50",		histogram.getPercentile(0.50));
+			values.put(entry.getKey() + ".p99",		histogram.getPercentile(0.99));
+			values.put(entry.getKey() + ".max",		histogram.getMax());
+		}
+
+		return values;
+	}
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright (c) 2013 Michael Watzko and IT-Designers GmbH.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.itd.maps.mapsforge.examples.fx.metrics;
+
+import javafx.animation.AnimationTimer;
+
+/**
+ * Records the interval between two FX pulses as {@link Metrics#FX_PULSE}
+ */
+public class PulseMonitor {
+
+	private final Histogram	histogram	= Metrics.getInstance().histogram(Metrics.FX_PULSE);
+	private long			last;
+
+	private final AnimationTimer timer = new AnimationTimer() {
+		@Override
+		public void handle(long now) {
+			if (last != 0) {
+				histogram.record(now - last);
+			}
+			last = now;
+		}
+	};
+
+	/**
+	 * Starts to record the pulses, needs to be called by the FX-Thread
+	 */
+	public void start () {
+		last = 0;
+		timer.start();
+	}
+
+	/**
+	 * Stops to record the pulses, needs to be called by the FX-Thread
+	 */
+	public void stop () {
+		timer.stop();
+	}
+}
@@ -0,0 +1,226 @@
+/*
+ * Copyright (c) 2013 Michael Watzko and IT-Designers GmbH.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.itd.maps.mapsforge.examples.fx.movement;
+
+import java.util.Arrays;
+
+/**
+ * Smooths the movement of {@link MovementEngine} slots between position samples.
+ *
+ * Each slot is shown a fixed delay behind the time of its latest sample. Whenever
+ * a new sample arrives, the slot moves from its position at that time to the
+ * new sample within that delay, so it does not jump as long as the samples
+ * are not older than the delay when they arrive. If no further sample
+ * arrives in time, the position is extrapolated with the last speed and
+ * direction for at most the given extrapolation time, afterwards the slot rests.
+ * If a sample has no heading, the heading is derived from the movement.
+ *
+ * Not thread-safe, it is guarded by the lock of the {@link MovementEngine}.
+ */
+public class MotionModel {
+
+	private static final int	INITIAL_CAPACITY	= 16;
+	private static final double	MIN_HEADING_STEP	= 1e-9;	// degree
+
+	private final long delay;
+	private final long extrapolation;
+
+	private long[]		fromTime			= new long	[INITIAL_CAPACITY];
+	private double[]	fromLatitude		= new double[INITIAL_CAPACITY];
+	private double[]	fromLongitude		= new double[INITIAL_CAPACITY];
+	private long[]		toTime				= new long	[INITIAL_CAPACITY];
+	private double[]	toLatitude			= new double[INITIAL_CAPACITY];
+	private double[]	toLongitude			= new double[INITIAL_CAPACITY];
+	private double[]	heading				= new double[INITIAL_CAPACITY];
+	private boolean[]	sampled				= new boolean[INITIAL_CAPACITY];
+	private boolean[]	active				= new boolean[INITIAL_CAPACITY];
+	private boolean[]	listed				= new boolean[INITIAL_CAPACITY];
+	private int[]		activeSlots			= new int	[INITIAL_CAPACITY];
+	private int			activeCount;
+
+	// the shown position of the last evaluation
+	private double		shownLatitude;
+	private double		shownLongitude;
+
+	/**
+	 * @param delay			Time in nanoseconds a slot is shown behind its latest sample,
+	 *						about the interval in which samples arrive
+	 * @param extrapolation	Time in nanoseconds a slot keeps moving without a new sample
+	 */
+	public MotionModel (long delay, long extrapolation) {
+		this.delay			= Math.max(1, delay);
+		this.extrapolation	= Math.max(0, extrapolation);
+	}
+
+	/**
+	 * Adds a sample for the given slot
+	 *
+	 * @param slot		Slot of the sample
+	 * @param lat		Latitude of the sample
+	 * @param lon		Longitude of the sample
+	 * @param heading	Heading in degree clockwise from north, or NaN to derive it from the movement
+	 * @param time		Time the sample was taken or arrived at in nanoseconds, see {@link System#nanoTime()}
+	 */
+	public void sample (int slot, double lat, double lon, double heading, long time) {
+		ensureCapacity(slot + 1);
+
+		if (sampled[slot]) {
+			// start from where the slot is shown at the time of the sample
+			locate(slot, time - delay);
+			fromTime		[slot] = time - delay;
+			fromLatitude	[slot] = shownLatitude;
+			fromLongitude	[slot] = shownLongitude;
+		} else {
+			fromTime		[slot] = time - delay;
+			fromLatitude	[slot] = lat;
+			fromLongitude	[slot] = lon;
+			this.heading	[slot] = Double.NaN;
+			sampled			[slot] = true;
+		}
+
+		toTime		[slot] = time;
+		toLatitude	[slot] = lat;
+		toLongitude	[slot] = lon;
+
+		if (!Double.isNaN(heading)) {
+			this.heading[slot] = heading;
+
+		} else {
+			double dLat = lat - fromLatitude [slot];
+			double dLon = (lon - fromLongitude[slot]) * Math.cos(Math.toRadians(lat));
+
+			if (Math.abs(dLat) > MIN_HEADING_STEP || Math.abs(dLon) > MIN_HEADING_STEP) {
+				this.heading[slot] = (Math.toDegrees(Math.atan2(dLon, dLat)) + 360) % 360;
+			}
+		}
+
+		active[slot] = true;
+
+		if (!listed[slot]) {
+			listed[slot]				= true;
+			activeSlots[activeCount++]	= slot;
+		}
+	}
+
+	/**
+	 * Forgets all samples of the given slot
+	 * @param slot	Slot to forget
+	 */
+	public void remove (int slot) {
+		if (slot >= sampled.length) {
+			return;
+		}
+
+		sampled	[slot] = false;
+		active	[slot] = false;	// removed from the active slots by the next evaluation
+	}
+
+	/**
+	 * @return The amount of slots that are still moving
+	 */
+	public int getActiveCount () {
+		return activeCount;
+	}
+
+	/**
+	 * Evaluates the position of all moving slots at the given time,
+	 * slots that came to rest are not evaluated again until their next sample.
+	 * The given arrays need to hold at least {@link #getActiveCount()} values.
+	 *
+	 * @param now		Current time in nanoseconds, see {@link System#nanoTime()}
+	 * @param slots		Receives the evaluated slots
+	 * @param lat		Receives the latitudes, in the order of the slots
+	 * @param lon		Receives the longitudes, in the order of the slots
+	 * @param heading	Receives the headings or NaN if unknown, in the order of the slots
+	 * @return The amount of evaluated slots
+	 */
+	public int evaluate (long now, int[] slots, double[] lat, double[] lon, double[] heading) {
+		long	time	= now - delay;
+		int		count	= 0;
+		int		kept	= 0;
+
+		for (int i = 0; i < activeCount; i++) {
+			int slot = activeSlots[i];
+
+			if (!active[slot]) {
+				listed[slot] = false;
+				continue;
+			}
+
+			boolean moving = locate(slot, time);
+
+			slots	[count] = slot;
+			lat		[count] = shownLatitude;
+			lon		[count] = shownLongitude;
+			heading	[count] = this.heading[slot];
+			count++;
+
+			if (moving) {
+				activeSlots[kept++] = slot;
+			} else {
+				active[slot] = false;
+				listed[slot] = false;
+			}
+		}
+
+		activeCount = kept;
+		return count;
+	}
+
+	/**
+	 * Sets the shown position of the given slot at the given time
+	 * @return Whether the slot is still moving at that time
+	 */
+	private boolean locate (int slot, long time) {
+		long	from		= fromTime[slot];
+		long	to			= toTime  [slot];
+		long	duration	= Math.max(1, to - from);
+		long	elapsed		= Math.min(time - from, duration + extrapolation);
+
+		if (elapsed <= 0) {
+			shownLatitude	= fromLatitude [slot];
+			shownLongitude	= fromLongitude[slot];
+			return true;
+		}
+
+		double fraction	= (double)elapsed / duration;
+		shownLatitude	= fromLatitude [slot] + (toLatitude [slot] - fromLatitude [slot]) * fraction;
+		shownLongitude	= fromLongitude[slot] + (toLongitude[slot] - fromLongitude[slot]) * fraction;
+
+		return time - from < duration + extrapolation;
+	}
+
+	private void ensureCapacity (int capacity) {
+		if (sampled.length >= capacity) {
+			return;
+		}
+
+		int length		= Math.max(capacity, sampled.length * 2);
+		fromTime		= Arrays.copyOf(fromTime,		length);
+		fromLatitude	= Arrays.copyOf(fromLatitude,	length);
+		fromLongitude	= Arrays.copyOf(fromLongitude,	length);
+		toTime			= Arrays.copyOf(toTime,			length);
+		toLatitude		= Arrays.copyOf(toLatitude,		length);
+		toLongitude		= Arrays.copyOf(toLongitude,	length);
+		heading			= Arrays.copyOf(heading,		length);
+		sampled			= Arrays.copyOf(sampled,		length);
+		active			= Arrays.copyOf(active,			length);
+		listed			= Arrays.copyOf(listed,			length);
+		activeSlots		= Arrays.copyOf(activeSlots,	length);
+	}
+}
@@ -0,0 +1,482 @@
+/*
+ * Copyright (c) 2013 Michael Watzko and IT-Designers GmbH.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.itd.maps.mapsforge.examples.fx.movement;
+
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import javafx.animation.AnimationTimer;
+
+import org.apache.log4j.Logger;
+
+import de.itd.maps.mapsforge.MapItem;
+
+/**
+ * Moves any number of {@link MapItem}s with a single scheduler thread
+ * and a single FX-Thread task per frame.
+ *
+ * Positions are posted from any thread into a primitive buffer that is
+ * indexed by the slot of the {@link MapItem}, only the latest position
+ * of each slot is kept. Once per pulse, the pending positions are swapped
+ * into a second buffer and applied to the properties of the {@link MapItem}s.
+ * A heading is optional, it is applied as rotation of the {@link MapItem}.
+ *
+ * With a {@link MotionModel}, the positions are not applied as they are posted,
+ * but the model is evaluated for all moving {@link MapItem}s on each pulse.
+ * Positions are timed by their arrival, unless the time they were taken
+ * at is posted along with them.
+ *
+ * A {@link MapItem} is only weakly referenced, its slot is released as
+ * soon as it has been garbage collected.
+ */
+public class MovementEngine {
+
+	private static final int INITIAL_CAPACITY = 16;
+
+	private final Logger	logger	= Logger.getLogger(getClass());
+	private final Object	lock	= new Object();
+	private final long		interval;
+
+	// slot data, guarded by lock
+	private WeakReference<MapItem>[]	items;
+	private double[]					latitude;
+	private double[]					longitude;
+	private double[]					heading;
+	private double[]					velocityLatitude;
+	private double[]					velocityLongitude;
+	private boolean[]					moving;
+	private boolean[]					dirty;
+	private int[]						dirtySlots;
+	private int							dirtyCount;
+	private int[]						freeSlots;
+	private int							freeCount;
+	private int							size;
+	private MotionModel					motion;
+
+	// front buffer, only accessed by the FX-Thread
+	private MapItem[]	frontItems		= new MapItem[INITIAL_CAPACITY];
+	private int[]		frontSlots		= new int    [INITIAL_CAPACITY];
+	private double[]	frontLatitude	= new double [INITIAL_CAPACITY];
+	private double[]	frontLongitude	= new double [INITIAL_CAPACITY];
+	private double[]	frontHeading	= new double [INITIAL_CAPACITY];
+
+	// statistics
+	private volatile long	postedCount;
+	private volatile long	appliedCount;
+	private volatile long	pulseCount;
+
+	private ScheduledExecutorService	scheduler;
+	private long						lastStep;
+
+	private final AnimationTimer timer = new AnimationTimer() {
+		@Override
+		public void handle(long now) {
+			pulse(now);
+		}
+	};
+
+	/**
+	 * @param interval	Interval in milliseconds in which moving {@link MapItem}s are updated
+	 */
+	@SuppressWarnings("unchecked")
+	public MovementEngine (long interval) {
+		this.interval			= interval;
+		this.items				= new WeakReference[INITIAL_CAPACITY];
+		this.latitude			= new double [INITIAL_CAPACITY];
+		this.longitude			= new double [INITIAL_CAPACITY];
+		this.heading			= new double [INITIAL_CAPACITY];
+		this.velocityLatitude	= new double [INITIAL_CAPACITY];
+		this.velocityLongitude	= new double [INITIAL_CAPACITY];
+		this.moving				= new boolean[INITIAL_CAPACITY];
+		this.dirty				= new boolean[INITIAL_CAPACITY];
+		this.dirtySlots			= new int    [INITIAL_CAPACITY];
+		this.freeSlots			= new int    [INITIAL_CAPACITY];
+	}
+
+	/**
+	 * Starts the scheduler and the pulse, needs to be called by the FX-Thread
+	 */
+	public void start () {
+		synchronized (lock) {
+			if (scheduler != null) {
+				return;
+			}
+
+			lastStep	= System.nanoTime();
+			scheduler	= Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, MovementEngine.class.getSimpleName());
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+
+		scheduler.scheduleAtFixedRate(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					step();
+				} catch (Throwable t) {
+					logger.error("Failed to move the MapItems", t);
+				}
+			}
+		}, interval, interval, TimeUnit.MILLISECONDS);
+
+		timer.start();
+	}
+
+	/**
+	 * Stops the scheduler and the pulse, needs to be called by the FX-Thread
+	 */
+	public void stop () {
+		timer.stop();
+
+		synchronized (lock) {
+			if (scheduler != null) {
+				scheduler.shutdownNow();
+				scheduler = null;
+			}
+		}
+	}
+
+	/**
+	 * Sets the {@link MotionModel} to smooth the movement between posted
+	 * positions with, needs to be set before any position is posted
+	 *
+	 * @param motion	{@link MotionModel} to use or null to apply the positions as posted
+	 */
+	public void setMotionModel (MotionModel motion) {
+		synchronized (lock) {
+			this.motion = motion;
+		}
+	}
+
+	/**
+	 * Registers the given {@link MapItem}, its current position
+	 * is used as start position for any movement
+	 *
+	 * @param item	{@link MapItem} to register
+	 * @return The slot of the {@link MapItem}
+	 */
+	public int register (MapItem item) {
+		double lat = item.latitudeProperty() .get();
+		double lon = item.longitudeProperty().get();
+
+		synchronized (lock) {
+			int slot;
+
+			if (freeCount > 0) {
+				slot = freeSlots[--freeCount];
+			} else {
+				slot = size++;
+				ensureCapacity(size);
+			}
+
+			items				[slot] = new WeakReference<MapItem>(item);
+			latitude			[slot] = lat;
+			longitude			[slot] = lon;
+			heading				[slot] = Double.NaN;
+			velocityLatitude	[slot] = 0;
+			velocityLongitude	[slot] = 0;
+			moving				[slot] = false;
+
+			return slot;
+		}
+	}
+
+	/**
+	 * Releases the given slot, pending updates are discarded
+	 *
+	 * @param slot	Slot to release
+	 */
+	public void unregister (int slot) {
+		synchronized (lock) {
+			release(slot);
+		}
+	}
+
+	/**
+	 * Moves the {@link MapItem} of the given slot constantly
+	 *
+	 * @param slot	Slot of the {@link MapItem} to move
+	 * @param lat	Latitude to move the {@link MapItem} by each second
+	 * @param lon	Longitude to move the {@link MapItem} by each second
+	 */
+	public void move (int slot, double lat, double lon) {
+		synchronized (lock) {
+			velocityLatitude	[slot] = lat;
+			velocityLongitude	[slot] = lon;
+			moving				[slot] = lat != 0 || lon != 0;
+		}
+	}
+
+	/**
+	 * Posts a new position for the {@link MapItem} of the given slot,
+	 * can be called by any thread. If the position is not yet applied,
+	 * it is replaced by the given position.
+	 *
+	 * @param slot	Slot of the {@link MapItem}
+	 * @param lat	New latitude
+	 * @param lon	New longitude
+	 */
+	public void post (int slot, double lat, double lon) {
+		synchronized (lock) {
+			if (items[slot] != null) {
+				post0(slot, lat, lon, Double.NaN, System.nanoTime());
+			}
+		}
+	}
+
+	/**
+	 * Posts new positions for the {@link MapItem}s of the given slots
+	 * at once, can be called by any thread
+	 *
+	 * @param slots	Slots of the {@link MapItem}s
+	 * @param lat	New latitudes, in the order of the slots
+	 * @param lon	New longitudes, in the order of the slots
+	 * @param count	Amount of positions to post
+	 * @see #post(int, double, double)
+	 */
+	public void postAll (int[] slots, double[] lat, double[] lon, int count) {
+		long now = System.nanoTime();
+
+		synchronized (lock) {
+			for (int i = 0; i < count; i++) {
+				if (items[slots[i]] != null) {
+					post0(slots[i], lat[i], lon[i], Double.NaN, now);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Posts new positions and headings for the {@link MapItem}s of the
+	 * given slots at once, can be called by any thread
+	 *
+	 * @param slots		Slots of the {@link MapItem}s
+	 * @param lat		New latitudes, in the order of the slots
+	 * @param lon		New longitudes, in the order of the slots
+	 * @param heading	New headings in degree clockwise from north, or NaN to keep the current one
+	 * @param time		Times the positions were taken at in nanoseconds, see {@link System#nanoTime()}
+	 * @param count		Amount of positions to post
+	 * @see #post(int, double, double)
+	 */
+	public void postAll (int[] slots, double[] lat, double[] lon, double[] heading, long[] time, int count) {
+		synchronized (lock) {
+			for (int i = 0; i < count; i++) {
+				if (items[slots[i]] != null) {
+					post0(slots[i], lat[i], lon[i], heading[i], time[i]);
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return The amount of positions posted so far
+	 */
+	public long getPostedCount () {
+		return postedCount;
+	}
+
+	/**
+	 * @return The amount of positions applied to {@link MapItem}s so far
+	 */
+	public long getAppliedCount () {
+		return appliedCount;
+	}
+
+	/**
+	 * @return The amount of pulses, that have applied at least one position
+	 */
+	public long getPulseCount () {
+		return pulseCount;
+	}
+
+	/**
+	 * Called by the FX-Thread after a new position has been
+	 * applied to the given {@link MapItem}
+	 *
+	 * @param item	{@link MapItem} that has been moved
+	 */
+	protected void onApplied (MapItem item) {
+
+	}
+
+	private void step () {
+		long 	now		= System.nanoTime();
+		double	seconds	= (now - lastStep) / 1e9;
+		lastStep		= now;
+
+		synchronized (lock) {
+			for (int slot = 0; slot < size; slot++) {
+				if (!moving[slot]) {
+					continue;
+				}
+
+				if (items[slot].get() == null) {
+					release(slot);
+					continue;
+				}
+
+				post0(
+						slot,
+						latitude [slot] + velocityLatitude [slot] * seconds,
+						longitude[slot] + velocityLongitude[slot] * seconds,
+						Double.NaN,
+						now
+						);
+			}
+		}
+	}
+
+	private void pulse (long now) {
+		int count;
+
+		synchronized (lock) {
+			count = motion != null ? motion.getActiveCount() : dirtyCount;
+
+			if (count == 0) {
+				return;
+			}
+
+			if (frontItems.length < count) {
+				int capacity	= Math.max(count, frontItems.length * 2);
+				frontItems		= Arrays.copyOf(frontItems,		capacity);
+				frontSlots		= Arrays.copyOf(frontSlots,		capacity);
+				frontLatitude	= Arrays.copyOf(frontLatitude,	capacity);
+				frontLongitude	= Arrays.copyOf(frontLongitude,	capacity);
+				frontHeading	= Arrays.copyOf(frontHeading,	capacity);
+			}
+
+			if (motion != null) {
+				count = motion.evaluate(now, frontSlots, frontLatitude, frontLongitude, frontHeading);
+
+				for (int i = 0; i < count; i++) {
+					int slot = frontSlots[i];
+					frontItems[i] = items[slot] != null ? items[slot].get() : null;
+				}
+
+			} else {
+				for (int i = 0; i < count; i++) {
+					int slot = dirtySlots[i];
+
+					frontItems		[i] = items[slot] != null ? items[slot].get() : null;
+					frontLatitude	[i] = latitude [slot];
+					frontLongitude	[i] = longitude[slot];
+					frontHeading	[i] = heading  [slot];
+					heading		 [slot] = Double.NaN;
+					dirty		 [slot] = false;
+				}
+
+				dirtyCount = 0;
+			}
+		}
+
+		int applied = 0;
+
+		for (int i = 0; i < count; i++) {
+			MapItem item	= frontItems[i];
+			frontItems[i]	= null;
+
+			if (item != null) {
+				item.latitudeProperty() .set(frontLatitude [i]);
+				item.longitudeProperty().set(frontLongitude[i]);
+
+				if (!Double.isNaN(frontHeading[i])) {
+					item.setRotate(frontHeading[i]);
+				}
+
+				onApplied(item);
+				applied++;
+			}
+		}
+
+		appliedCount	+= applied;
+		pulseCount		+= 1;
+	}
+
+	/**
+	 * Needs to be called while holding the lock
+	 */
+	private void post0 (int slot, double lat, double lon, double heading, long now) {
+		latitude [slot] = lat;
+		longitude[slot] = lon;
+		postedCount++;
+
+		if (motion != null) {
+			motion.sample(slot, lat, lon, heading, now);
+			return;
+		}
+
+		// a pending heading is kept, if only the position changes
+		if (!Double.isNaN(heading)) {
+			this.heading[slot] = heading;
+		}
+
+		if (!dirty[slot]) {
+			dirty[slot]					= true;
+			dirtySlots[dirtyCount++]	= slot;
+		}
+	}
+
+	/**
+	 * Needs to be called while holding the lock, a pending
+	 * update stays in the dirty list and is skipped by the pulse
+	 */
+	private void release (int slot) {
+		if (items[slot] == null) {
+			return;
+		}
+
+		items	[slot] = null;
+		moving	[slot] = false;
+
+		if (motion != null) {
+			motion.remove(slot);
+		}
+
+		freeSlots[freeCount++] = slot;
+	}
+
+	/**
+	 * Needs to be called while holding the lock
+	 */
+	private void ensureCapacity (int capacity) {
+		if (items.length >= capacity) {
+			return;
+		}
+
+		int length 			= Math.max(capacity, items.length * 2);
+		items				= Arrays.copyOf(items,				length);
+		latitude			= Arrays.copyOf(latitude,			length);
+		longitude			= Arrays.copyOf(longitude,			length);
+		heading				= Arrays.copyOf(heading,			length);
+		velocityLatitude	= Arrays.copyOf(velocityLatitude,	length);
+		velocityLongitude	= Arrays.copyOf(velocityLongitude,	length);
+		moving				= Arrays.copyOf(moving,				length);
+		dirty				= Arrays.copyOf(dirty,				length);
+		dirtySlots			= Arrays.copyOf(dirtySlots,			length);
+		freeSlots			= Arrays.copyOf(freeSlots,			length);
+	}
+}
@@ -0,0 +1,385 @@
+/*
+ * Copyright (c) 2013 Michael Watzko and IT-Designers GmbH.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.itd.maps.mapsforge.examples.fx.movement;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import javafx.animation.AnimationTimer;
+
+import de.itd.c2x.system.mmi.container.gpsposition.Car;
+
+/**
+ * Takes position samples of {@link Car}s from any number of threads,
+ * e.g. from a C2X or GPS feed, and passes the latest state of each
+ * {@link Car} to a {@link MovementEngine} once per pulse.
+ *
+ * Samples are written into a bounded lock free ring buffer, a producer
+ * only claims a cell with a compare-and-set and never waits for the
+ * FX-Thread. If the ring is full, the sample is dropped. Samples with
+ * a timestamp that is not newer than the last sample of the same {@link Car}
+ * are dropped as stale, when the ring is drained. The timestamps are passed
+ * on, so a {@link MotionModel} moves between the times the samples were taken.
+ *
+ * Each sample is tagged with the generation of its slot, which changes
+ * whenever a {@link Car} is registered or unregistered. Samples of a
+ * previous generation are dropped, so they never move another {@link Car}
+ * that reuses the slot.
+ *
+ * The pulse drains the ring before the {@link MovementEngine} applies the
+ * positions of the same pulse, if this {@link PositionIngest} is started first.
+ */
+public class PositionIngest {
+
+	public static final int DEFAULT_CAPACITY = 1 << 16;
+
+	private final MovementEngine						engine;
+	private final ConcurrentMap<String, Registration>	slots		= new ConcurrentHashMap<>();
+	private volatile AtomicIntegerArray					generations	= new AtomicIntegerArray(16);	// odd while registered
+
+	// ring, the sequence of a cell tells whether it is free or written
+	private final int				mask;
+	private final AtomicLongArray	sequence;
+	private final AtomicLong		tail	= new AtomicLong();
+	private final int[]				ringSlot;
+	private final int[]				ringGeneration;
+	private final double[]			ringLatitude;
+	private final double[]			ringLongitude;
+	private final double[]			ringHeading;
+	private final long[]			ringTimestamp;
+
+	// consumer state, only accessed by the draining thread
+	private long		head;
+	private long[]		lastTimestamp	= new long[0];
+	private int[]		lastGeneration	= new int[0];
+	private int[]		batchSlot;
+	private double[]	batchLatitude;
+	private double[]	batchLongitude;
+	private double[]	batchHeading;
+	private long[]		batchTimestamp;
+
+	// statistics
+	private final LongAdder	offeredCount	= new LongAdder();
+	private final LongAdder	droppedCount	= new LongAdder();
+	private final LongAdder	unknownCount	= new LongAdder();
+	private volatile long	staleCount;
+	private volatile long	deliveredCount;
+
+	private final AnimationTimer timer = new AnimationTimer() {
+		@Override
+		public void handle(long now) {
+			drain();
+		}
+	};
+
+	/**
+	 * @param engine	{@link MovementEngine} to pass the positions to
+	 */
+	public PositionIngest (MovementEngine engine) {
+		this(engine, DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * @param engine	{@link MovementEngine} to pass the positions to
+	 * @param capacity	Amount of samples the ring can hold between two pulses, rounded up to a power of two
+	 */
+	public PositionIngest (MovementEngine engine, int capacity) {
+		int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+
+		this.engine			= engine;
+		this.mask			= size - 1;
+		this.sequence		= new AtomicLongArray(size);
+		this.ringSlot		= new int	[size];
+		this.ringGeneration	= new int	[size];
+		this.ringLatitude	= new double[size];
+		this.ringLongitude	= new double[size];
+		this.ringHeading	= new double[size];
+		this.ringTimestamp	= new long	[size];
+		this.batchSlot		= new int	[size];
+		this.batchLatitude	= new double[size];
+		this.batchLongitude	= new double[size];
+		this.batchHeading	= new double[size];
+		this.batchTimestamp	= new long	[size];
+
+		for (int i = 0; i < size; i++) {
+			sequence.set(i, i);
+		}
+	}
+
+	/**
+	 * Starts to drain the samples once per pulse, needs to be called by the FX-Thread
+	 */
+	public void start () {
+		timer.start();
+	}
+
+	/**
+	 * Stops to drain the samples, needs to be called by the FX-Thread
+	 */
+	public void stop () {
+		timer.stop();
+	}
+
+	/**
+	 * Registers the given {@link Car} with the {@link MovementEngine},
+	 * samples for its {@link Car#getID()} are accepted afterwards
+	 *
+	 * @param car	{@link Car} to register
+	 * @return The slot of the {@link Car} in the {@link MovementEngine}
+	 */
+	public int register (Car car) {
+		int slot		= engine.register(car);
+		int generation	= nextGeneration(slot);	// the slot might have been used by another car
+		slots.put(car.getID(), new Registration(slot, generation));
+		return slot;
+	}
+
+	/**
+	 * Unregisters the {@link Car} with the given id, samples
+	 * that are still in the ring are dropped when drained
+	 *
+	 * @param id	{@link Car#getID()} of the {@link Car}
+	 */
+	public void unregister (String id) {
+		Registration registration = slots.remove(id);
+
+		if (registration != null) {
+			nextGeneration(registration.slot);
+			engine.unregister(registration.slot);
+		}
+	}
+
+	/**
+	 * Offers a sample for the {@link Car} with the given id, can be called by any thread
+	 *
+	 * @param id		{@link Car#getID()} of the {@link Car}
+	 * @param lat		Latitude of the {@link Car}
+	 * @param lon		Longitude of the {@link Car}
+	 * @param heading	Heading in degree clockwise from north, or NaN if unknown
+	 * @param timestamp	Time the sample was taken at in nanoseconds, see {@link System#nanoTime()}
+	 * @return Whether the sample was accepted, false if the id is unknown or the ring is full
+	 */
+	public boolean offer (String id, double lat, double lon, double heading, long timestamp) {
+		Registration registration = slots.get(id);
+
+		if (registration == null) {
+			unknownCount.increment();
+			return false;
+		}
+
+		return offer0(registration.slot, registration.generation, lat, lon, heading, timestamp);
+	}
+
+	/**
+	 * Offers a sample for the given slot, can be called by any thread
+	 *
+	 * @param slot		Slot returned by {@link #register(Car)}
+	 * @param lat		Latitude of the {@link Car}
+	 * @param lon		Longitude of the {@link Car}
+	 * @param heading	Heading in degree clockwise from north, or NaN if unknown
+	 * @param timestamp	Time the sample was taken at in nanoseconds, see {@link System#nanoTime()}
+	 * @return Whether the sample was accepted, false if the slot is unknown or the ring is full
+	 */
+	public boolean offer (int slot, double lat, double lon, double heading, long timestamp) {
+		AtomicIntegerArray	array		= generations;
+		int					generation	= slot >= 0 && slot < array.length() ? array.get(slot) : 0;
+
+		// registering and unregistering each increment the generation
+		if ((generation & 1) == 0) {
+			unknownCount.increment();
+			return false;
+		}
+
+		return offer0(slot, generation, lat, lon, heading, timestamp);
+	}
+
+	private boolean offer0 (int slot, int generation, double lat, double lon, double heading, long timestamp) {
+		offeredCount.increment();
+
+		while (true) {
+			long	position	= tail.get();
+			int		index		= (int)position & mask;
+			long	available	= sequence.get(index);
+
+			if (available == position) {
+				if (tail.compareAndSet(position, position + 1)) {
+					ringSlot		[index] = slot;
+					ringGeneration	[index] = generation;
+					ringLatitude	[index] = lat;
+					ringLongitude	[index] = lon;
+					ringHeading		[index] = heading;
+					ringTimestamp	[index] = timestamp;
+
+					// publishes the cell to the consumer
+					sequence.lazySet(index, position + 1);
+					return true;
+				}
+
+			} else if (available < position) {
+				// not yet drained since the last round
+				droppedCount.increment();
+				return false;
+			}
+		}
+	}
+
+	/**
+	 * Passes all samples in the ring to the {@link MovementEngine}, called once
+	 * per pulse after {@link #start()}. Must not be called by more than one thread at a time.
+	 *
+	 * @return The amount of passed samples
+	 */
+	public int drain () {
+		int count = 0;
+		int stale = 0;
+
+		while (true) {
+			int		index	= (int)head & mask;
+			long	written	= sequence.get(index);
+
+			if (written != head + 1) {
+				break;
+			}
+
+			int		slot		= ringSlot		[index];
+			int		generation	= ringGeneration[index];
+			long	timestamp	= ringTimestamp	[index];
+
+			ensureCapacity(slot);
+
+			if (generation != generations.get(slot)) {
+				// of a car that has been unregistered since
+				stale++;
+
+			} else if (generation != lastGeneration[slot] || timestamp > lastTimestamp[slot]) {
+				lastGeneration	[slot]	= generation;
+				lastTimestamp	[slot]	= timestamp;
+				batchSlot		[count]	= slot;
+				batchLatitude	[count]	= ringLatitude	[index];
+				batchLongitude	[count]	= ringLongitude	[index];
+				batchHeading	[count]	= ringHeading	[index];
+				batchTimestamp	[count]	= timestamp;
+				count++;
+			} else {
+				stale++;
+			}
+
+			// frees the cell for the next round
+			sequence.lazySet(index, head + mask + 1);
+			head++;
+		}
+
+		if (count > 0) {
+			engine.postAll(batchSlot, batchLatitude, batchLongitude, batchHeading, batchTimestamp, count);
+		}
+
+		staleCount		+= stale;
+		deliveredCount	+= count;
+		return count;
+	}
+
+	/**
+	 * Only called by the draining thread
+	 */
+	private void ensureCapacity (int slot) {
+		if (slot < lastTimestamp.length) {
+			return;
+		}
+
+		int length		= Math.max(slot + 1, lastTimestamp.length * 2);
+		int previous	= lastTimestamp.length;
+		lastTimestamp	= Arrays.copyOf(lastTimestamp, length);
+		lastGeneration	= Arrays.copyOf(lastGeneration, length);
+		Arrays.fill(lastTimestamp, previous, length, Long.MIN_VALUE);
+	}
+
+	/**
+	 * Changes the generation of the given slot, the {@link AtomicIntegerArray}
+	 * is only replaced while holding the lock of this {@link PositionIngest}
+	 *
+	 * @return The new generation of the slot
+	 */
+	private synchronized int nextGeneration (int slot) {
+		AtomicIntegerArray array = generations;
+
+		if (slot >= array.length()) {
+			AtomicIntegerArray grown = new AtomicIntegerArray(Math.max(slot + 1, array.length() * 2));
+
+			for (int i = 0; i < array.length(); i++) {
+				grown.set(i, array.get(i));
+			}
+
+			generations	= grown;
+			array		= grown;
+		}
+
+		return array.incrementAndGet(slot);
+	}
+
+	/**
+	 * @return The amount of offered samples
+	 */
+	public long getOfferedCount () {
+		return offeredCount.sum();
+	}
+
+	/**
+	 * @return The amount of samples dropped because the ring was full
+	 */
+	public long getDroppedCount () {
+		return droppedCount.sum();
+	}
+
+	/**
+	 * @return The amount of samples for an unknown id or slot
+	 */
+	public long getUnknownCount () {
+		return unknownCount.sum();
+	}
+
+	/**
+	 * @return The amount of samples dropped because a newer sample had already been passed
+	 *			or the {@link Car} has been unregistered since
+	 */
+	public long getStaleCount () {
+		return staleCount;
+	}
+
+	/**
+	 * @return The amount of samples passed to the {@link MovementEngine}
+	 */
+	public long getDeliveredCount () {
+		return deliveredCount;
+	}
+
+	private static class Registration {
+
+		private final int slot;
+		private final int generation;
+
+		private Registration (int slot, int generation) {
+			this.slot		= slot;
+			this.generation	= generation;
+		}
+	}
+}
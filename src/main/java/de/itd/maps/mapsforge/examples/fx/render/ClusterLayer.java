@@ -0,0 +1,385 @@
+/*
+ * Copyright (c) 2013 Michael Watzko and IT-Designers GmbH.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.itd.maps.mapsforge.examples.fx.render;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javafx.geometry.VPos;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.paint.Color;
+import javafx.scene.text.Font;
+import javafx.scene.text.TextAlignment;
+
+import de.itd.maps.mapsforge.MapItem;
+import de.itd.maps.mapsforge.MapsforgeMap;
+import de.itd.maps.mapsforge.examples.fx.map.MapItemIndex;
+
+/**
+ * Groups the {@link MapItem}s of a {@link MapItemIndex} into clusters up
+ * to the zoom level {@link #MAX_ZOOM}. A cell of {@link #CELL_SIZE} pixels
+ * with more than one {@link MapItem} is drawn as bubble with the amount of
+ * {@link MapItem}s at their centroid, the {@link MapItem}s themselves are
+ * hidden through the {@link MapItemIndex.Filter}. So at low zoom levels, the
+ * amount of drawn bubbles and {@link MapItem}s is bound by the size of the
+ * map, not by the amount of {@link MapItem}s.
+ *
+ * The cells form a hierarchical grid: a cell of one zoom level is made of
+ * 2 x 2 cells of the next zoom level. The cells of all zoom levels are kept
+ * up to date with the {@link MapItemIndex.Listener}, each cell knows the amount,
+ * the sum of the positions and the XOR of the ids of its {@link MapItem}s.
+ * The XOR is the id of the only {@link MapItem} of a cell, whose visibility
+ * changes as soon as a second {@link MapItem} enters or leaves the cell.
+ *
+ * All methods need to be called by the FX-Thread.
+ */
+public class ClusterLayer extends MapLayer implements MapItemIndex.Listener, MapItemIndex.Filter {
+
+	public static final int		MAX_ZOOM	= 15;	// no clusters above this zoom level
+	public static final double	CELL_SIZE	= 64;	// pixels
+
+	private static final Color	BUBBLE_FILL		= Color.rgb(30, 120, 255, 0.75);
+	private static final Color	BUBBLE_STROKE	= Color.WHITE;
+	private static final Color	LABEL_FILL		= Color.WHITE;
+	private static final Font	LABEL_FONT		= Font.font(11);
+
+	private final MapItemIndex					index;
+	private final Map<MapItem, Member>			members	= new IdentityHashMap<>();
+	private final List<HashMap<Long, Cell>>		levels	= new ArrayList<>(MAX_ZOOM + 1);
+	private final double						gridSize;
+
+	// MapItems by id, for the XOR of the ids
+	private MapItem[]	items		= new MapItem[64];
+	private int[]		freeIds		= new int[64];
+	private int			freeCount;
+	private int			nextId;
+
+	// result of the last draw
+	private int			clusterCount;
+	private int			clusteredCount;
+
+	/**
+	 * @param map	{@link MapsforgeMap} to draw on
+	 * @param index	{@link MapItemIndex} with the {@link MapItem}s to cluster, the
+	 * 				{@link MapItemIndex.Listener} and {@link MapItemIndex.Filter} are replaced
+	 */
+	public ClusterLayer (MapsforgeMap map, MapItemIndex index) {
+		super(map);
+		this.index		= index;
+		this.gridSize	= MapViewport.getMapSize((byte)MAX_ZOOM) / CELL_SIZE;
+
+		for (int zoom = 0; zoom <= MAX_ZOOM; zoom++) {
+			levels.add(new HashMap<Long, Cell>());
+		}
+
+		index.setFilter		(this);
+		index.setListener	(this);
+	}
+
+	/**
+	 * @return The amount of bubbles drawn by the last pulse
+	 */
+	public int getClusterCount () {
+		return clusterCount;
+	}
+
+	/**
+	 * @return The amount of {@link MapItem}s in the bubbles drawn by the last pulse
+	 */
+	public int getClusteredCount () {
+		return clusteredCount;
+	}
+
+	/**
+	 * @param zoom	Zoom level up to {@link #MAX_ZOOM}
+	 * @return The amount of cells with at least one {@link MapItem} at the given zoom level
+	 */
+	public int getCellCount (int zoom) {
+		return levels.get(zoom).size();
+	}
+
+	@Override
+	public boolean isShown (MapItem item) {
+		int		zoom	= getZoom();
+		Member	member	= members.get(item);
+
+		return zoom > MAX_ZOOM || member == null || member.cells[zoom].count < 2;
+	}
+
+	@Override
+	public void added (MapItem item) {
+		if (members.containsKey(item)) {
+			return;
+		}
+
+		Member member = new Member(allocateId());
+		items[member.id] = item;
+		members.put(item, member);
+
+		setPosition(member, item);
+
+		int zoom = getZoom();
+		for (int level = MAX_ZOOM; level >= 0; level--) {
+			addToCell(member, level, level == zoom);
+		}
+
+		invalidate();
+	}
+
+	@Override
+	public void moved (MapItem item) {
+		Member member = members.get(item);
+
+		if (member == null) {
+			return;
+		}
+
+		double	oldX		= member.x;
+		double	oldY		= member.y;
+		int		oldCellX	= member.cellX;
+		int		oldCellY	= member.cellY;
+		int		zoom		= getZoom();
+		int		level		= MAX_ZOOM;
+
+		setPosition(member, item);
+
+		// move into the new cells, until the cells are the same
+		for (; level >= 0; level--) {
+			int shift = MAX_ZOOM - level;
+
+			if (oldCellX >> shift == member.cellX >> shift && oldCellY >> shift == member.cellY >> shift) {
+				break;
+			}
+
+			Cell cell = member.cells[level];
+			cell.sumX -= oldX;
+			cell.sumY -= oldY;
+			removeFromCell(member, level, level == zoom);
+			addToCell(member, level, level == zoom);
+		}
+
+		// move within the remaining cells
+		for (; level >= 0; level--) {
+			Cell cell = member.cells[level];
+			cell.sumX += member.x - oldX;
+			cell.sumY += member.y - oldY;
+		}
+
+		invalidate();
+	}
+
+	@Override
+	public void removed (MapItem item) {
+		Member member = members.remove(item);
+
+		if (member == null) {
+			return;
+		}
+
+		int zoom = getZoom();
+		for (int level = MAX_ZOOM; level >= 0; level--) {
+			Cell cell = member.cells[level];
+			cell.sumX -= member.x;
+			cell.sumY -= member.y;
+			removeFromCell(member, level, level == zoom);
+		}
+
+		items[member.id]		= null;
+		freeIds[freeCount++]	= member.id;
+		invalidate();
+	}
+
+	@Override
+	protected void draw (GraphicsContext gc, MapViewport viewport) {
+		clusterCount	= 0;
+		clusteredCount	= 0;
+
+		int zoom = viewport.getZoom();
+
+		if (zoom > MAX_ZOOM) {
+			return;
+		}
+
+		HashMap<Long, Cell>	cells	= levels.get(zoom);
+		double				mapSize	= MapViewport.getMapSize(viewport.getZoom());
+		double				originX	= viewport.getCenterX() - viewport.getWidth()  / 2;
+		double				originY	= viewport.getCenterY() - viewport.getHeight() / 2;
+
+		gc.setLineWidth		(2);
+		gc.setTextAlign		(TextAlignment.CENTER);
+		gc.setTextBaseline	(VPos.CENTER);
+		gc.setFont			(LABEL_FONT);
+
+		// the centroid of a cell is within the cell, so the neighboring cells are enough as margin
+		int fromX	= (int)Math.floor(originX / CELL_SIZE) - 1;
+		int fromY	= (int)Math.floor(originY / CELL_SIZE) - 1;
+		int toX		= (int)Math.floor((originX + viewport.getWidth())  / CELL_SIZE) + 1;
+		int toY		= (int)Math.floor((originY + viewport.getHeight()) / CELL_SIZE) + 1;
+
+		if ((long)(toX - fromX + 1) * (toY - fromY + 1) < cells.size()) {
+			for (int x = fromX; x <= toX; x++) {
+				for (int y = fromY; y <= toY; y++) {
+					Cell cell = cells.get(getKey(x, y));
+
+					if (cell != null) {
+						drawCell(gc, cell, mapSize, originX, originY);
+					}
+				}
+			}
+		} else {
+			for (Cell cell : cells.values()) {
+				drawCell(gc, cell, mapSize, originX, originY);
+			}
+		}
+	}
+
+	private void drawCell (GraphicsContext gc, Cell cell, double mapSize, double originX, double originY) {
+		if (cell.count < 2) {
+			return;
+		}
+
+		double x = cell.sumX / cell.count * mapSize - originX;
+		double y = cell.sumY / cell.count * mapSize - originY;
+		double r = 10 + 4 * Math.log10(cell.count);
+
+		gc.setFill		(BUBBLE_FILL);
+		gc.setStroke	(BUBBLE_STROKE);
+		gc.fillOval		(x - r, y - r, r * 2, r * 2);
+		gc.strokeOval	(x - r, y - r, r * 2, r * 2);
+
+		gc.setFill		(LABEL_FILL);
+		gc.fillText		(Integer.toString(cell.count), x, y);
+
+		clusterCount++;
+		clusteredCount += cell.count;
+	}
+
+	/**
+	 * Adds the {@link Member} to its cell of the given zoom level
+	 * @param shown	Whether the zoom level is shown, so that the visibility of a single {@link MapItem} may change
+	 */
+	private void addToCell (Member member, int level, boolean shown) {
+		int		shift	= MAX_ZOOM - level;
+		long	key		= getKey(member.cellX >> shift, member.cellY >> shift);
+		Cell	cell	= levels.get(level).get(key);
+
+		if (cell == null) {
+			cell = new Cell(key);
+			levels.get(level).put(key, cell);
+		}
+
+		if (shown && cell.count == 1) {
+			// the single MapItem is clustered from now on
+			index.invalidate(items[cell.ids]);
+		}
+
+		cell.count++;
+		cell.sumX	+= member.x;
+		cell.sumY	+= member.y;
+		cell.ids	^= member.id;
+
+		member.cells[level] = cell;
+	}
+
+	/**
+	 * Removes the {@link Member} from its cell of the given zoom level, the caller subtracts its position
+	 * @param shown	Whether the zoom level is shown, so that the visibility of a single {@link MapItem} may change
+	 */
+	private void removeFromCell (Member member, int level, boolean shown) {
+		Cell cell = member.cells[level];
+
+		cell.count--;
+		cell.ids ^= member.id;
+
+		if (cell.count == 0) {
+			levels.get(level).remove(cell.key);
+
+		} else if (shown && cell.count == 1) {
+			// the remaining MapItem is no longer clustered
+			index.invalidate(items[cell.ids]);
+		}
+
+		member.cells[level] = null;
+	}
+
+	/**
+	 * Reads the position of the {@link MapItem}, the cells are updated by the caller
+	 */
+	private void setPosition (Member member, MapItem item) {
+		member.x		= MapViewport.longitudeToPixelX	(item.longitudeProperty().get(), 1);
+		member.y		= MapViewport.latitudeToPixelY	(item.latitudeProperty() .get(), 1);
+		member.cellX	= (int)Math.floor(member.x * gridSize);
+		member.cellY	= (int)Math.floor(member.y * gridSize);
+	}
+
+	private int allocateId () {
+		if (freeCount > 0) {
+			return freeIds[--freeCount];
+		}
+
+		if (nextId == items.length) {
+			items	= Arrays.copyOf(items,		nextId * 2);
+			freeIds	= Arrays.copyOf(freeIds,	nextId * 2);
+		}
+
+		return nextId++;
+	}
+
+	private int getZoom () {
+		return map.getMapView().zoomProperty().getValue().byteValue();
+	}
+
+	private static long getKey (int x, int y) {
+		return ((long)x << 32) | (y & 0xFFFFFFFFL);
+	}
+
+	/**
+	 * {@link MapItem}s within a cell of the grid of one zoom level
+	 */
+	private static class Cell {
+		final long	key;
+		int			count;
+		int			ids;
+		double		sumX;
+		double		sumY;
+
+		Cell (long key) {
+			this.key = key;
+		}
+	}
+
+	/**
+	 * State of a {@link MapItem} in the grid
+	 */
+	private static class Member {
+		final int		id;
+		final Cell[]	cells	= new Cell[MAX_ZOOM + 1];
+		double			x;
+		double			y;
+		int				cellX;
+		int				cellY;
+
+		Member (int id) {
+			this.id = id;
+		}
+	}
+}
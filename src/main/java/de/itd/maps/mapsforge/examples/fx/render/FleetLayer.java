@@ -0,0 +1,391 @@
+/*
+ * Copyright (c) 2013 Michael Watzko and IT-Designers GmbH.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.itd.maps.mapsforge.examples.fx.render;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import javafx.beans.property.ReadOnlyStringProperty;
+import javafx.beans.property.ReadOnlyStringWrapper;
+import javafx.event.EventHandler;
+import javafx.geometry.VPos;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.control.ContextMenu;
+import javafx.scene.input.ContextMenuEvent;
+import javafx.scene.input.MouseButton;
+import javafx.scene.input.MouseEvent;
+import javafx.scene.paint.Color;
+import javafx.scene.text.Font;
+import javafx.scene.text.TextAlignment;
+
+import de.itd.c2x.system.mmi.container.gpsposition.Car;
+import de.itd.maps.mapsforge.MapsforgeMap;
+
+/**
+ * Draws any amount of cars onto a single {@link MapLayer}, as lightweight
+ * alternative to one {@link Car} per car in the scene graph.
+ *
+ * The state of the cars is kept in primitive arrays, only the visible
+ * cars are drawn. Depending on the zoom level, the cars are drawn as
+ * dots, as symbol with direction or additionally with their radius and id.
+ *
+ * All methods need to be called by the FX-Thread.
+ */
+public class FleetLayer extends MapLayer {
+
+	public static final int		SYMBOL_ZOOM		= 14;	// draw the symbol and direction from this zoom level on
+	public static final int		DETAIL_ZOOM		= 16;	// draw the radius and id from this zoom level on
+	public static final double	DEFAULT_RADIUS	= 300;	// meters
+	public static final double	PICK_RADIUS		= 6;	// pixels
+
+	private static final int	INITIAL_CAPACITY	= 64;
+	private static final Color	RADIUS_FILL			= new Color(1, 1, 1, 0.15);
+	private static final Color	RADIUS_STROKE		= new Color(0.3, 0.3, 0.3, 0.4);
+	private static final Font	LABEL_FONT			= Font.font(10);
+
+	private final Map<String, Integer> indices = new HashMap<>();
+
+	// structure of arrays
+	private String[]	ids			= new String[INITIAL_CAPACITY];
+	private double[]	latitude	= new double[INITIAL_CAPACITY];
+	private double[]	longitude	= new double[INITIAL_CAPACITY];
+	private double[]	direction	= new double[INITIAL_CAPACITY];
+	private double[]	radius		= new double[INITIAL_CAPACITY];
+	private Color[]		stroke		= new Color [INITIAL_CAPACITY];
+	private Color[]		fill		= new Color [INITIAL_CAPACITY];
+	private int			size;
+
+	// result of the last draw, used for picking
+	private double[]	screenX			= new double[INITIAL_CAPACITY];
+	private double[]	screenY			= new double[INITIAL_CAPACITY];
+	private int[]		visible			= new int	[INITIAL_CAPACITY];
+	private int			visibleCount;
+
+	private final double[] polygonX = new double[3];
+	private final double[] polygonY = new double[3];
+
+	private final ContextMenu			contextMenu	= new ContextMenu();
+	private final ReadOnlyStringWrapper	selectedId	= new ReadOnlyStringWrapper();
+
+	/**
+	 * @param map	{@link MapsforgeMap} to draw on
+	 */
+	public FleetLayer (MapsforgeMap map) {
+		super(map);
+
+		// the layer is mouse transparent, so hit test the events of the map
+		map.addEventFilter(MouseEvent.MOUSE_PRESSED, new EventHandler<MouseEvent>() {
+			@Override
+			public void handle(MouseEvent event) {
+				if (event.getButton() == MouseButton.SECONDARY && showContextMenu(event.getX(), event.getY(), event.getScreenX(), event.getScreenY())) {
+					event.consume();
+				}
+			}
+		});
+
+		EventHandler<MouseEvent> consumer = new EventHandler<MouseEvent>() {
+			@Override
+			public void handle(MouseEvent event) {
+				if (event.getButton() == MouseButton.SECONDARY && pick(event.getX(), event.getY()) >= 0) {
+					event.consume();
+				}
+			}
+		};
+
+		map.addEventFilter(MouseEvent.MOUSE_RELEASED,	consumer);
+		map.addEventFilter(MouseEvent.MOUSE_CLICKED,	consumer);
+		map.addEventFilter(ContextMenuEvent.CONTEXT_MENU_REQUESTED, new EventHandler<ContextMenuEvent>() {
+			@Override
+			public void handle(ContextMenuEvent event) {
+				if (pick(event.getX(), event.getY()) >= 0) {
+					event.consume();
+				}
+			}
+		});
+	}
+
+	/**
+	 * Adds a car, or replaces the car with the same id
+	 *
+	 * @param id		Id of the car
+	 * @param lat		Latitude of the car
+	 * @param lon		Longitude of the car
+	 * @param stroke	Stroke {@link Color}
+	 * @param fill		Fill {@link Color}
+	 * @return The index of the car
+	 */
+	public int add (String id, double lat, double lon, Color stroke, Color fill) {
+		Integer existing	= indices.get(id);
+		int		index		= existing != null ? existing : size++;
+
+		ensureCapacity(size);
+
+		this.ids		[index] = id;
+		this.latitude	[index] = lat;
+		this.longitude	[index] = lon;
+		this.direction	[index] = 0;
+		this.radius		[index] = DEFAULT_RADIUS;
+		this.stroke		[index] = stroke;
+		this.fill		[index] = fill;
+
+		indices.put(id, index);
+		invalidate();
+		return index;
+	}
+
+	/**
+	 * Removes the car with the given id, the last car takes its index
+	 *
+	 * @param id	Id of the car to remove
+	 * @return Whether the car has been removed
+	 */
+	public boolean remove (String id) {
+		Integer index = indices.remove(id);
+
+		if (index == null) {
+			return false;
+		}
+
+		int last = --size;
+
+		if (index != last) {
+			ids			[index] = ids		[last];
+			latitude	[index] = latitude	[last];
+			longitude	[index] = longitude	[last];
+			direction	[index] = direction	[last];
+			radius		[index] = radius	[last];
+			stroke		[index] = stroke	[last];
+			fill		[index] = fill		[last];
+			indices.put(ids[index], index);
+		}
+
+		ids		[last] = null;
+		stroke	[last] = null;
+		fill	[last] = null;
+
+		// the indices of the last draw are no longer valid
+		visibleCount = 0;
+		invalidate();
+		return true;
+	}
+
+	/**
+	 * @param id	Id of the car
+	 * @return The index of the car or -1
+	 */
+	public int indexOf (String id) {
+		Integer index = indices.get(id);
+		return index != null ? index : -1;
+	}
+
+	/**
+	 * @param index	Index of the car
+	 * @param lat	New latitude
+	 * @param lon	New longitude
+	 */
+	public void setPosition (int index, double lat, double lon) {
+		latitude [index] = lat;
+		longitude[index] = lon;
+		invalidate();
+	}
+
+	/**
+	 * @param index		Index of the car
+	 * @param degree	New direction in degree, clockwise from north
+	 */
+	public void setDirection (int index, double degree) {
+		direction[index] = degree;
+		invalidate();
+	}
+
+	/**
+	 * @param index		Index of the car
+	 * @param meters	New radius in meters
+	 */
+	public void setRadius (int index, double meters) {
+		radius[index] = meters;
+		invalidate();
+	}
+
+	public String getId (int index) {
+		return ids[index];
+	}
+
+	public double getLatitude (int index) {
+		return latitude[index];
+	}
+
+	public double getLongitude (int index) {
+		return longitude[index];
+	}
+
+	public double getDirection (int index) {
+		return direction[index];
+	}
+
+	/**
+	 * @return The amount of cars
+	 */
+	public int size () {
+		return size;
+	}
+
+	/**
+	 * @return The amount of cars drawn by the last pulse
+	 */
+	public int getVisibleCount () {
+		return visibleCount;
+	}
+
+	/**
+	 * @param x	x position relative to the map
+	 * @param y	y position relative to the map
+	 * @return The index of the nearest car drawn at the given position or -1
+	 */
+	public int pick (double x, double y) {
+		int		nearest		= -1;
+		double	distance	= PICK_RADIUS * PICK_RADIUS;
+
+		for (int i = 0; i < visibleCount; i++) {
+			double dx = screenX[i] - x;
+			double dy = screenY[i] - y;
+			double d  = dx * dx + dy * dy;
+
+			if (d <= distance) {
+				distance	= d;
+				nearest		= visible[i];
+			}
+		}
+
+		return nearest;
+	}
+
+	/**
+	 * @return The {@link ContextMenu} shown for a car, see {@link #selectedIdProperty()}
+	 */
+	public ContextMenu getContextMenu () {
+		return contextMenu;
+	}
+
+	/**
+	 * @return The id of the car the {@link ContextMenu} has been shown for
+	 */
+	public ReadOnlyStringProperty selectedIdProperty () {
+		return selectedId.getReadOnlyProperty();
+	}
+
+	@Override
+	protected void draw (GraphicsContext gc, MapViewport viewport) {
+		int		zoom	= viewport.getZoom();
+		double	margin	= zoom >= DETAIL_ZOOM ? 50 : 5;
+
+		gc.setLineWidth(1);
+		gc.setTextAlign(TextAlignment.CENTER);
+		gc.setTextBaseline(VPos.TOP);
+		gc.setFont(LABEL_FONT);
+
+		visibleCount = 0;
+
+		for (int i = 0; i < size; i++) {
+			double x = viewport.toX(longitude[i]);
+			double y = viewport.toY(latitude [i]);
+
+			if (!viewport.isVisible(x, y, margin)) {
+				continue;
+			}
+
+			screenX	[visibleCount] = x;
+			screenY	[visibleCount] = y;
+			visible	[visibleCount] = i;
+			visibleCount++;
+
+			if (zoom < SYMBOL_ZOOM) {
+				gc.setFill(fill[i]);
+				gc.fillRect(x - 1.5, y - 1.5, 3, 3);
+				continue;
+			}
+
+			if (zoom >= DETAIL_ZOOM) {
+				double r = radius[i] / viewport.getMetersPerPixel(latitude[i]);
+				gc.setFill	(RADIUS_FILL);
+				gc.setStroke(RADIUS_STROKE);
+				gc.fillOval		(x - r, y - r, r * 2, r * 2);
+				gc.strokeOval	(x - r, y - r, r * 2, r * 2);
+			}
+
+			// direction indicator
+			double sin = Math.sin(Math.toRadians(direction[i]));
+			double cos = Math.cos(Math.toRadians(direction[i]));
+			polygon(0, x, y, sin, cos,  0, -10);
+			polygon(1, x, y, sin, cos, -3,  -5);
+			polygon(2, x, y, sin, cos,  3,  -5);
+
+			gc.setFill(stroke[i]);
+			gc.fillPolygon(polygonX, polygonY, 3);
+
+			gc.setFill	(fill	[i]);
+			gc.setStroke(stroke	[i]);
+			gc.fillOval		(x - 4, y - 4, 8, 8);
+			gc.strokeOval	(x - 4, y - 4, 8, 8);
+
+			if (zoom >= DETAIL_ZOOM) {
+				gc.setFill(stroke[i]);
+				gc.fillText(ids[i], x, y + 6);
+			}
+		}
+	}
+
+	private void polygon (int point, double x, double y, double sin, double cos, double px, double py) {
+		polygonX[point] = x + px * cos - py * sin;
+		polygonY[point] = y + px * sin + py * cos;
+	}
+
+	private boolean showContextMenu (double x, double y, double screenX, double screenY) {
+		int index = pick(x, y);
+
+		if (index < 0) {
+			return false;
+		}
+
+		if (!contextMenu.getItems().isEmpty()) {
+			selectedId.set(ids[index]);
+			contextMenu.show(this, screenX, screenY);
+		}
+
+		return true;
+	}
+
+	private void ensureCapacity (int capacity) {
+		if (ids.length >= capacity) {
+			return;
+		}
+
+		int length	= Math.max(capacity, ids.length * 2);
+		ids			= Arrays.copyOf(ids,		length);
+		latitude	= Arrays.copyOf(latitude,	length);
+		longitude	= Arrays.copyOf(longitude,	length);
+		direction	= Arrays.copyOf(direction,	length);
+		radius		= Arrays.copyOf(radius,		length);
+		stroke		= Arrays.copyOf(stroke,		length);
+		fill		= Arrays.copyOf(fill,		length);
+		screenX		= Arrays.copyOf(screenX,	length);
+		screenY		= Arrays.copyOf(screenY,	length);
+		visible		= Arrays.copyOf(visible,	length);
+	}
+}
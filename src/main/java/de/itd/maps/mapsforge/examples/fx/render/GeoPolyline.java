@@ -0,0 +1,224 @@
+/*
+ * Copyright (c) 2013 Michael Watzko and IT-Designers GmbH.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.itd.maps.mapsforge.examples.fx.render;
+
+import java.util.Arrays;
+
+/**
+ * Immutable polyline of geo positions, prepared to be drawn at any zoom level.
+ *
+ * The points are projected once into mercator coordinates of a map with
+ * the size 1, so that they only need to be scaled for a zoom level. The
+ * significance of the points is calculated once with the {@link PolylineSimplifier},
+ * the simplified polyline of a zoom level is created on first use by filtering
+ * them with {@link #TOLERANCE} pixels.
+ *
+ * The points are grouped into blocks of {@link #BLOCK_SIZE} segments with
+ * their bounding box, so that only the blocks within the viewport need to be drawn.
+ */
+public class GeoPolyline {
+
+	public static final double	TOLERANCE	= 0.5;	// pixels
+	public static final int		BLOCK_SIZE	= 64;	// segments
+
+	private final double[]	x;
+	private final double[]	y;
+	private final double[]	significance;
+	private final int		count;
+
+	// bounding boxes of the blocks and of the whole polyline
+	private final double[]	blockMinX;
+	private final double[]	blockMinY;
+	private final double[]	blockMaxX;
+	private final double[]	blockMaxY;
+	private double			minX	= Double.POSITIVE_INFINITY;
+	private double			minY	= Double.POSITIVE_INFINITY;
+	private double			maxX	= Double.NEGATIVE_INFINITY;
+	private double			maxY	= Double.NEGATIVE_INFINITY;
+
+	private final Level[] levels = new Level[Byte.MAX_VALUE + 1];
+
+	/**
+	 * @param latitude	Latitudes of the points
+	 * @param longitude	Longitudes of the points
+	 * @param count		Amount of points, at least 2
+	 */
+	public GeoPolyline (double[] latitude, double[] longitude, int count) {
+		if (count < 2) {
+			throw new IllegalArgumentException("A polyline needs at least 2 points, got "+count);
+		}
+
+		this.count			= count;
+		this.x				= new double[count];
+		this.y				= new double[count];
+		this.significance	= new double[count];
+
+		for (int i = 0; i < count; i++) {
+			x[i] = MapViewport.longitudeToPixelX(longitude[i],	1);
+			y[i] = MapViewport.latitudeToPixelY	(latitude [i],	1);
+		}
+
+		PolylineSimplifier.getSignificance(x, y, count, significance);
+
+		int blocks	= (count - 2) / BLOCK_SIZE + 1;
+		blockMinX	= new double[blocks];
+		blockMinY	= new double[blocks];
+		blockMaxX	= new double[blocks];
+		blockMaxY	= new double[blocks];
+
+		for (int b = 0; b < blocks; b++) {
+			double	bMinX	= Double.POSITIVE_INFINITY;
+			double	bMinY	= Double.POSITIVE_INFINITY;
+			double	bMaxX	= Double.NEGATIVE_INFINITY;
+			double	bMaxY	= Double.NEGATIVE_INFINITY;
+			int		last	= getBlockEnd(b);
+
+			// the last point of a block is the first of the next one
+			for (int i = b * BLOCK_SIZE; i <= last; i++) {
+				bMinX = Math.min(bMinX, x[i]);
+				bMinY = Math.min(bMinY, y[i]);
+				bMaxX = Math.max(bMaxX, x[i]);
+				bMaxY = Math.max(bMaxY, y[i]);
+			}
+
+			blockMinX[b] = bMinX;
+			blockMinY[b] = bMinY;
+			blockMaxX[b] = bMaxX;
+			blockMaxY[b] = bMaxY;
+
+			minX = Math.min(minX, bMinX);
+			minY = Math.min(minY, bMinY);
+			maxX = Math.max(maxX, bMaxX);
+			maxY = Math.max(maxY, bMaxY);
+		}
+	}
+
+	/**
+	 * @return The amount of points
+	 */
+	public int size () {
+		return count;
+	}
+
+	/**
+	 * @param zoom	Zoom level
+	 * @return The amount of points drawn at the given zoom level, needs to be called by the FX-Thread
+	 */
+	public int size (byte zoom) {
+		return getLevel(zoom).size;
+	}
+
+	/**
+	 * @return The amount of blocks
+	 */
+	public int getBlockCount () {
+		return blockMinX.length;
+	}
+
+	/**
+	 * All coordinates are relative to a map with the size 1
+	 *
+	 * @return Whether the given rectangle intersects the bounding box of the polyline
+	 */
+	public boolean intersects (double left, double top, double right, double bottom) {
+		return minX <= right && maxX >= left && minY <= bottom && maxY >= top;
+	}
+
+	/**
+	 * All coordinates are relative to a map with the size 1
+	 *
+	 * @param block	Index of the block
+	 * @return Whether the given rectangle intersects the bounding box of the block
+	 */
+	public boolean intersects (int block, double left, double top, double right, double bottom) {
+		return blockMinX[block] <= right && blockMaxX[block] >= left
+			&& blockMinY[block] <= bottom && blockMaxY[block] >= top;
+	}
+
+	/**
+	 * @return The x coordinate of the given point relative to a map with the size 1
+	 */
+	public double getX (int index) {
+		return x[index];
+	}
+
+	/**
+	 * @return The y coordinate of the given point relative to a map with the size 1
+	 */
+	public double getY (int index) {
+		return y[index];
+	}
+
+	/**
+	 * @param zoom	Zoom level
+	 * @return The simplified polyline of the given zoom level, needs to be called by the FX-Thread
+	 */
+	Level getLevel (byte zoom) {
+		int		index	= zoom & Byte.MAX_VALUE;
+		Level	level	= levels[index];
+
+		if (level == null) {
+			level			= new Level(zoom);
+			levels[index]	= level;
+		}
+
+		return level;
+	}
+
+	private int getBlockEnd (int block) {
+		return Math.min((block + 1) * BLOCK_SIZE, count - 1);
+	}
+
+	/**
+	 * Indices of the points kept at one zoom level
+	 */
+	class Level {
+
+		final int[]	kept;
+		final int[]	blockStart;	// index into kept of the first point of each block, one more than blocks
+		final int	size;
+
+		Level (byte zoom) {
+			double	tolerance	= TOLERANCE / MapViewport.getMapSize(zoom);
+			double	limit		= tolerance * tolerance;
+			int[]	indices		= new int[count];
+			int		kept		= 0;
+
+			for (int i = 0; i < count; i++) {
+				if (significance[i] > limit) {
+					indices[kept++] = i;
+				}
+			}
+
+			this.kept		= Arrays.copyOf(indices, kept);
+			this.size		= kept;
+			this.blockStart	= new int[blockMinX.length + 1];
+
+			int k = 0;
+			for (int b = 0; b < blockStart.length; b++) {
+				int first = Math.min(b * BLOCK_SIZE, count - 1);
+
+				while (this.kept[k] < first) {
+					k++;
+				}
+
+				blockStart[b] = k;
+			}
+		}
+	}
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2013 Michael Watzko and IT-Designers GmbH.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.itd.maps.mapsforge.examples.fx.render;
+
+import javafx.animation.AnimationTimer;
+import javafx.beans.value.ChangeListener;
+import javafx.beans.value.ObservableValue;
+import javafx.geometry.Bounds;
+import javafx.scene.Scene;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+
+import de.itd.maps.mapsforge.MapsforgeMap;
+
+/**
+ * {@link Canvas} on top of a {@link MapsforgeMap}, that follows the
+ * size of the map and is redrawn at most once per pulse, if either
+ * the {@link MapViewport} has changed or {@link #invalidate()} was called.
+ *
+ * The layer needs to be added to the same parent as the map, on the
+ * same position. It is mouse transparent and only drawn while it is
+ * part of a {@link Scene}.
+ */
+public abstract class MapLayer extends Canvas {
+
+	protected final MapsforgeMap	map;
+	protected final MapViewport		viewport	= new MapViewport();
+
+	private boolean dirty = true;
+
+	private final AnimationTimer timer = new AnimationTimer() {
+		@Override
+		public void handle(long now) {
+			pulse(now);
+
+			if (viewport.update(map, getWidth(), getHeight()) | dirty) {
+				dirty = false;
+
+				GraphicsContext gc = getGraphicsContext2D();
+				gc.clearRect(0, 0, getWidth(), getHeight());
+				draw(gc, viewport);
+			}
+		}
+	};
+
+	/**
+	 * @param map	{@link MapsforgeMap} to draw on
+	 */
+	public MapLayer (MapsforgeMap map) {
+		this.map = map;
+
+		setMouseTransparent(true);
+		layoutXProperty().bind(map.layoutXProperty());
+		layoutYProperty().bind(map.layoutYProperty());
+
+		map.layoutBoundsProperty().addListener(new ChangeListener<Bounds>() {
+			@Override
+			public void changed(ObservableValue<? extends Bounds> observable, Bounds oldValue, Bounds newValue) {
+				setWidth (newValue.getWidth());
+				setHeight(newValue.getHeight());
+				invalidate();
+			}
+		});
+
+		sceneProperty().addListener(new ChangeListener<Scene>() {
+			@Override
+			public void changed(ObservableValue<? extends Scene> observable, Scene oldValue, Scene newValue) {
+				if (newValue != null) {
+					timer.start();
+				} else {
+					timer.stop();
+				}
+			}
+		});
+	}
+
+	/**
+	 * Redraws the layer with the next pulse, needs to be called by the FX-Thread
+	 */
+	public void invalidate () {
+		dirty = true;
+	}
+
+	/**
+	 * Called by the FX-Thread on each pulse, before the layer is drawn
+	 * @param now	Timestamp of the pulse in nanoseconds
+	 */
+	protected void pulse (long now) {
+
+	}
+
+	/**
+	 * Draws the layer, the {@link GraphicsContext} has already been cleared
+	 *
+	 * @param gc		{@link GraphicsContext} to draw with
+	 * @param viewport	Current {@link MapViewport}
+	 */
+	protected abstract void draw (GraphicsContext gc, MapViewport viewport);
+}
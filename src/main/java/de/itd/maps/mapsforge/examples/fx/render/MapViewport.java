@@ -0,0 +1,241 @@
+/*
+ * Copyright (c) 2013 Michael Watzko and IT-Designers GmbH.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.itd.maps.mapsforge.examples.fx.render;
+
+import de.itd.maps.mapsforge.MapsforgeMap;
+
+/**
+ * Snapshot of the visible area of a {@link MapsforgeMap}, that converts
+ * between latitude / longitude and pixels relative to the map without
+ * allocating any objects.
+ *
+ * The x and y position of the map view are the absolute pixel
+ * position of the center of the map at the current zoom level
+ * (mercator projection with tiles of {@link #TILE_SIZE} pixels).
+ */
+public class MapViewport {
+
+	public static final int		TILE_SIZE			= 256;
+	public static final double	MAX_LATITUDE		= 85.05112877980659;
+	public static final double	EARTH_CIRCUMFERENCE	= 40075016.686;
+
+	private double	centerX;
+	private double	centerY;
+	private byte	zoom;
+	private double	width;
+	private double	height;
+	private double	mapSize	= TILE_SIZE;
+
+	/**
+	 * Reads the current position and zoom level of the given {@link MapsforgeMap}
+	 *
+	 * @param map		{@link MapsforgeMap} to read
+	 * @param width		Width of the visible area in pixels
+	 * @param height	Height of the visible area in pixels
+	 * @return Whether the viewport has changed
+	 */
+	public boolean update (MapsforgeMap map, double width, double height) {
+		return update(
+				map.getMapView().getX(),
+				map.getMapView().getY(),
+				map.getMapView().zoomProperty().getValue().byteValue(),
+				width,
+				height
+				);
+	}
+
+	/**
+	 * @param centerX	Absolute x position of the center in pixels
+	 * @param centerY	Absolute y position of the center in pixels
+	 * @param zoom		Zoom level
+	 * @param width		Width of the visible area in pixels
+	 * @param height	Height of the visible area in pixels
+	 * @return Whether the viewport has changed
+	 */
+	public boolean update (double centerX, double centerY, byte zoom, double width, double height) {
+		boolean changed = this.centerX	!= centerX
+				||		  this.centerY	!= centerY
+				||		  this.zoom		!= zoom
+				||		  this.width	!= width
+				||		  this.height	!= height;
+
+		this.centerX	= centerX;
+		this.centerY	= centerY;
+		this.zoom		= zoom;
+		this.width		= width;
+		this.height		= height;
+		this.mapSize	= getMapSize(zoom);
+
+		return changed;
+	}
+
+	/**
+	 * @param longitude	Longitude to convert
+	 * @return The x position relative to the map
+	 */
+	public double toX (double longitude) {
+		return longitudeToPixelX(longitude, mapSize) - centerX + width / 2;
+	}
+
+	/**
+	 * @param latitude	Latitude to convert
+	 * @return The y position relative to the map
+	 */
+	public double toY (double latitude) {
+		return latitudeToPixelY(latitude, mapSize) - centerY + height / 2;
+	}
+
+	/**
+	 * @param x	x position relative to the map
+	 * @return The longitude at the given position
+	 */
+	public double toLongitude (double x) {
+		return pixelXToLongitude(centerX - width / 2 + x, mapSize);
+	}
+
+	/**
+	 * @param y	y position relative to the map
+	 * @return The latitude at the given position
+	 */
+	public double toLatitude (double y) {
+		return pixelYToLatitude(centerY - height / 2 + y, mapSize);
+	}
+
+	/**
+	 * @param x			x position relative to the map
+	 * @param y			y position relative to the map
+	 * @param result	{@link MutableGeoPoint} to store the position in
+	 * @return The given result
+	 */
+	public MutableGeoPoint toGeoPoint (double x, double y, MutableGeoPoint result) {
+		return result.set(toLatitude(y), toLongitude(x));
+	}
+
+	/**
+	 * @param x			x position relative to the map
+	 * @param y			y position relative to the map
+	 * @param margin	Margin around the visible area in pixels
+	 * @return Whether the given position is visible
+	 */
+	public boolean isVisible (double x, double y, double margin) {
+		return x >= -margin && x <= width  + margin
+			&& y >= -margin && y <= height + margin;
+	}
+
+	/**
+	 * @param latitude	Latitude to calculate the resolution at
+	 * @return The amount of meters one pixel represents at the given latitude
+	 */
+	public double getMetersPerPixel (double latitude) {
+		return EARTH_CIRCUMFERENCE * Math.cos(Math.toRadians(latitude)) / mapSize;
+	}
+
+	/**
+	 * @return The most northern visible latitude
+	 */
+	public double getMaxLatitude () {
+		return toLatitude(0);
+	}
+
+	/**
+	 * @return The most southern visible latitude
+	 */
+	public double getMinLatitude () {
+		return toLatitude(height);
+	}
+
+	/**
+	 * @return The most western visible longitude
+	 */
+	public double getMinLongitude () {
+		return toLongitude(0);
+	}
+
+	/**
+	 * @return The most eastern visible longitude
+	 */
+	public double getMaxLongitude () {
+		return toLongitude(width);
+	}
+
+	public double getCenterX () {
+		return centerX;
+	}
+
+	public double getCenterY () {
+		return centerY;
+	}
+
+	public byte getZoom () {
+		return zoom;
+	}
+
+	public double getWidth () {
+		return width;
+	}
+
+	public double getHeight () {
+		return height;
+	}
+
+	/**
+	 * @param zoom	Zoom level
+	 * @return The width and height of the whole map in pixels at the given zoom level
+	 */
+	public static double getMapSize (byte zoom) {
+		return (double)TILE_SIZE * (1L << zoom);
+	}
+
+	/**
+	 * @param longitude	Longitude to convert
+	 * @param mapSize	Size of the map in pixels, see {@link #getMapSize(byte)}
+	 * @return The absolute x position in pixels
+	 */
+	public static double longitudeToPixelX (double longitude, double mapSize) {
+		return (longitude + 180) / 360 * mapSize;
+	}
+
+	/**
+	 * @param latitude	Latitude to convert
+	 * @param mapSize	Size of the map in pixels, see {@link #getMapSize(byte)}
+	 * @return The absolute y position in pixels
+	 */
+	public static double latitudeToPixelY (double latitude, double mapSize) {
+		double sin = Math.sin(Math.toRadians(Math.max(-MAX_LATITUDE, Math.min(MAX_LATITUDE, latitude))));
+		return (0.5 - Math.log((1 + sin) / (1 - sin)) / (4 * Math.PI)) * mapSize;
+	}
+
+	/**
+	 * @param x			Absolute x position in pixels
+	 * @param mapSize	Size of the map in pixels, see {@link #getMapSize(byte)}
+	 * @return The longitude at the given position
+	 */
+	public static double pixelXToLongitude (double x, double mapSize) {
+		return 360 * (x / mapSize - 0.5);
+	}
+
+	/**
+	 * @param y			Absolute y position in pixels
+	 * @param mapSize	Size of the map in pixels, see {@link #getMapSize(byte)}
+	 * @return The latitude at the given position
+	 */
+	public static double pixelYToLatitude (double y, double mapSize) {
+		double value = 0.5 - y / mapSize;
+		return 90 - 360 * Math.atan(Math.exp(-value * 2 * Math.PI)) / Math.PI;
+	}
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright (c) 2013 Michael Watzko and IT-Designers GmbH.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.itd.maps.mapsforge.examples.fx.render;
+
+import org.mapsforge.core.model.GeoPoint;
+
+/**
+ * Reusable latitude and longitude, for conversions that are
+ * performed too often to create a {@link GeoPoint} each time
+ */
+public class MutableGeoPoint {
+
+	private double latitude;
+	private double longitude;
+
+	/**
+	 * @param lat	New latitude
+	 * @param lon	New longitude
+	 * @return This {@link MutableGeoPoint}
+	 */
+	public MutableGeoPoint set (double lat, double lon) {
+		this.latitude	= lat;
+		this.longitude	= lon;
+		return this;
+	}
+
+	/**
+	 * @return The latitude
+	 */
+	public double getLatitude () {
+		return latitude;
+	}
+
+	/**
+	 * @return The longitude
+	 */
+	public double getLongitude () {
+		return longitude;
+	}
+
+	/**
+	 * @return A new {@link GeoPoint} of the current latitude and longitude
+	 */
+	public GeoPoint toGeoPoint () {
+		return new GeoPoint(latitude, longitude);
+	}
+
+	@Override
+	public String toString() {
+		return getClass().getSimpleName()+": "+latitude+", "+longitude;
+	}
+}
@@ -0,0 +1,215 @@
+/*
+ * Copyright (c) 2013 Michael Watzko and IT-Designers GmbH.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.itd.maps.mapsforge.examples.fx.render;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.paint.Color;
+import javafx.scene.shape.StrokeLineCap;
+import javafx.scene.shape.StrokeLineJoin;
+
+import de.itd.maps.mapsforge.MapsforgeMap;
+import de.itd.maps.mapsforge.examples.fx.metrics.Histogram;
+import de.itd.maps.mapsforge.examples.fx.metrics.Metrics;
+
+/**
+ * Draws any amount of {@link GeoPolyline}s onto a single {@link MapLayer},
+ * as alternative to one {@link javafx.scene.shape.Polyline} with all
+ * points per line in the scene graph.
+ *
+ * Each line is drawn with the points of the current zoom level only and
+ * only the blocks of a line within the viewport are traced, lines with the
+ * same {@link Color} in a row are stroked together. The durations of the
+ * draws are recorded as {@link Metrics#OVERLAY_DRAW}.
+ *
+ * All methods need to be called by the FX-Thread.
+ */
+public class PolylineOverlay extends MapLayer {
+
+	public static final double DEFAULT_LINE_WIDTH = 2;
+
+	private final List<GeoPolyline>	lines	= new ArrayList<>();
+	private final List<Color>		strokes	= new ArrayList<>();
+
+	private final Histogram	durations	= Metrics.getInstance().histogram(Metrics.OVERLAY_DRAW);
+	private double			lineWidth	= DEFAULT_LINE_WIDTH;
+	private int				segmentCount;
+
+	/**
+	 * @param map	{@link MapsforgeMap} to draw on
+	 */
+	public PolylineOverlay (MapsforgeMap map) {
+		super(map);
+	}
+
+	/**
+	 * @param line		{@link GeoPolyline} to add
+	 * @param stroke	{@link Color} to draw the line with
+	 */
+	public void add (GeoPolyline line, Color stroke) {
+		lines	.add(line);
+		strokes	.add(stroke);
+		invalidate();
+	}
+
+	/**
+	 * @param line	{@link GeoPolyline} to remove
+	 * @return Whether the line has been removed
+	 */
+	public boolean remove (GeoPolyline line) {
+		int index = lines.indexOf(line);
+
+		if (index < 0) {
+			return false;
+		}
+
+		lines	.remove(index);
+		strokes	.remove(index);
+		invalidate();
+		return true;
+	}
+
+	/**
+	 * Removes all lines
+	 */
+	public void clear () {
+		lines	.clear();
+		strokes	.clear();
+		invalidate();
+	}
+
+	/**
+	 * @return The amount of lines
+	 */
+	public int size () {
+		return lines.size();
+	}
+
+	/**
+	 * @param width	Width of the lines in pixels
+	 */
+	public void setLineWidth (double width) {
+		this.lineWidth = width;
+		invalidate();
+	}
+
+	public double getLineWidth () {
+		return lineWidth;
+	}
+
+	/**
+	 * @return The amount of segments traced by the last draw
+	 */
+	public int getSegmentCount () {
+		return segmentCount;
+	}
+
+	@Override
+	protected void draw (GraphicsContext gc, MapViewport viewport) {
+		long start = System.nanoTime();
+
+		byte	zoom	= viewport.getZoom();
+		double	mapSize	= MapViewport.getMapSize(zoom);
+		double	originX	= viewport.getCenterX() - viewport.getWidth()  / 2;
+		double	originY	= viewport.getCenterY() - viewport.getHeight() / 2;
+
+		// visible area relative to a map with the size 1, a simplified
+		// line may be up to the tolerance away from its blocks
+		double	margin	= (lineWidth + GeoPolyline.TOLERANCE) / mapSize;
+		double	left	= originX / mapSize - margin;
+		double	top		= originY / mapSize - margin;
+		double	right	= (originX + viewport.getWidth())  / mapSize + margin;
+		double	bottom	= (originY + viewport.getHeight()) / mapSize + margin;
+
+		gc.setLineWidth	(lineWidth);
+		gc.setLineCap	(StrokeLineCap.ROUND);
+		gc.setLineJoin	(StrokeLineJoin.ROUND);
+
+		Color	current		= null;
+		int		segments	= 0;
+
+		for (int i = 0; i < lines.size(); i++) {
+			GeoPolyline line = lines.get(i);
+
+			if (!line.intersects(left, top, right, bottom)) {
+				continue;
+			}
+
+			Color stroke = strokes.get(i);
+
+			if (!stroke.equals(current)) {
+				if (current != null) {
+					gc.stroke();
+				}
+				current = stroke;
+				gc.setStroke(stroke);
+				gc.beginPath();
+			}
+
+			segments += trace(gc, line, zoom, left, top, right, bottom, originX, originY, mapSize);
+		}
+
+		if (current != null) {
+			gc.stroke();
+		}
+
+		segmentCount = segments;
+		durations.record(System.nanoTime() - start);
+	}
+
+	/**
+	 * Adds the visible runs of blocks of the given line to the current path
+	 * @return The amount of added segments
+	 */
+	private static int trace (GraphicsContext gc, GeoPolyline line, byte zoom, double left, double top, double right, double bottom, double originX, double originY, double mapSize) {
+		GeoPolyline.Level	level		= line.getLevel(zoom);
+		int					blocks		= line.getBlockCount();
+		int					segments	= 0;
+		int					block		= 0;
+
+		while (block < blocks) {
+			if (!line.intersects(block, left, top, right, bottom)) {
+				block++;
+				continue;
+			}
+
+			int first = block;
+			while (block < blocks && line.intersects(block, left, top, right, bottom)) {
+				block++;
+			}
+
+			// from the last point before the run up to the first point after it
+			int from	= Math.max(0, level.blockStart[first] - 1);
+			int to		= level.blockStart[block];
+
+			int index = level.kept[from];
+			gc.moveTo(line.getX(index) * mapSize - originX, line.getY(index) * mapSize - originY);
+
+			for (int k = from + 1; k <= to; k++) {
+				index = level.kept[k];
+				gc.lineTo(line.getX(index) * mapSize - originX, line.getY(index) * mapSize - originY);
+			}
+
+			segments += to - from;
+		}
+
+		return segments;
+	}
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) 2013 Michael Watzko and IT-Designers GmbH.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.itd.maps.mapsforge.examples.fx.render;
+
+/**
+ * Douglas-Peucker simplification of polylines in pixels.
+ *
+ * Instead of simplifying for one tolerance only, the significance of
+ * each point can be calculated once: the squared distance at which
+ * Douglas-Peucker would drop the point. The significance of a point
+ * never exceeds the one of the point that split its range, so the points
+ * kept for a tolerance are always a subset of those kept for a smaller
+ * tolerance, and any tolerance can be applied by a simple filter.
+ */
+public final class PolylineSimplifier {
+
+	private PolylineSimplifier () {
+
+	}
+
+	/**
+	 * Calculates the significance of each point, the first
+	 * and the last point have an infinite significance
+	 *
+	 * @param x				x coordinates of the points
+	 * @param y				y coordinates of the points
+	 * @param count			Amount of points
+	 * @param significance	Array to store the squared significance of each point in
+	 */
+	public static void getSignificance (double[] x, double[] y, int count, double[] significance) {
+		if (count == 0) {
+			return;
+		}
+
+		significance[0]			= Double.POSITIVE_INFINITY;
+		significance[count - 1]	= Double.POSITIVE_INFINITY;
+
+		if (count < 3) {
+			return;
+		}
+
+		// each range is split at most once, so there are never more than count ranges on the stack
+		int[]		stack	= new int	[count * 2];
+		double[]	limits	= new double[count];
+		int			top		= 0;
+
+		stack[top * 2]		= 0;
+		stack[top * 2 + 1]	= count - 1;
+		limits[top++]		= Double.POSITIVE_INFINITY;
+
+		while (top > 0) {
+			top--;
+			int		first	= stack[top * 2];
+			int		last	= stack[top * 2 + 1];
+			double	limit	= limits[top];
+
+			if (last - first < 2) {
+				continue;
+			}
+
+			double	dx			= x[last] - x[first];
+			double	dy			= y[last] - y[first];
+			double	length		= dx * dx + dy * dy;
+			double	maxDistance	= -1;
+			int		index		= first + 1;
+
+			for (int i = first + 1; i < last; i++) {
+				double distance = getDistanceSquared(x[i], y[i], x[first], y[first], dx, dy, length);
+
+				if (distance > maxDistance) {
+					maxDistance	= distance;
+					index		= i;
+				}
+			}
+
+			significance[index] = Math.min(maxDistance, limit);
+
+			stack[top * 2]		= first;
+			stack[top * 2 + 1]	= index;
+			limits[top++]		= significance[index];
+
+			stack[top * 2]		= index;
+			stack[top * 2 + 1]	= last;
+			limits[top++]		= significance[index];
+		}
+	}
+
+	/**
+	 * @return The squared distance of the point to the segment starting at (x0, y0) with the direction (dx, dy)
+	 */
+	private static double getDistanceSquared (double x, double y, double x0, double y0, double dx, double dy, double length) {
+		double t = length > 0 ? ((x - x0) * dx + (y - y0) * dy) / length : 0;
+		t = Math.max(0, Math.min(1, t));
+
+		double ex = x - (x0 + t * dx);
+		double ey = y - (y0 + t * dy);
+
+		return ex * ex + ey * ey;
+	}
+}
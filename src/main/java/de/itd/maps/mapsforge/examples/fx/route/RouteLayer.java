@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) 2013 Michael Watzko and IT-Designers GmbH.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.itd.maps.mapsforge.examples.fx.route;
+
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.paint.Color;
+
+import de.itd.maps.mapsforge.MapsforgeMap;
+import de.itd.maps.mapsforge.examples.fx.render.GeoPolyline;
+import de.itd.maps.mapsforge.examples.fx.render.MapViewport;
+import de.itd.maps.mapsforge.examples.fx.render.PolylineOverlay;
+
+/**
+ * Draws a {@link TrackBuffer} as line on top of a {@link MapsforgeMap}.
+ *
+ * New points are collected in chunks of {@link #CHUNK_SIZE} points as they
+ * arrive. Each full chunk is added as {@link GeoPolyline} to the
+ * {@link PolylineOverlay}, which simplifies it per zoom level and only
+ * traces it within the viewport, so the whole track is never decoded or
+ * simplified again while it grows. Until a chunk is full, its points are
+ * drawn as they are.
+ *
+ * All methods need to be called by the FX-Thread.
+ */
+public class RouteLayer extends PolylineOverlay {
+
+	public static final int		CHUNK_SIZE	= 256;
+	public static final Color	STROKE		= Color.rgb(30, 120, 255, 0.8);
+	public static final double	LINE_WIDTH	= 3;
+
+	private TrackBuffer			track;
+	private TrackBuffer.Cursor	cursor;
+
+	// the open chunk, starts with the last point of the previous one
+	private final double[]	latitude	= new double[CHUNK_SIZE];
+	private final double[]	longitude	= new double[CHUNK_SIZE];
+	private int				size;
+
+	/**
+	 * @param map	{@link MapsforgeMap} to draw on
+	 */
+	public RouteLayer (MapsforgeMap map) {
+		super(map);
+		setLineWidth(LINE_WIDTH);
+	}
+
+	/**
+	 * Sets the {@link TrackBuffer} to draw
+	 * @param track	{@link TrackBuffer} to draw or null to draw nothing
+	 */
+	public void setTrack (TrackBuffer track) {
+		this.track	= track;
+		this.cursor	= track != null ? track.cursor() : null;
+		this.size	= 0;
+		clear();
+	}
+
+	/**
+	 * @return The drawn {@link TrackBuffer} or null
+	 */
+	public TrackBuffer getTrack () {
+		return track;
+	}
+
+	@Override
+	protected void pulse(long now) {
+		if (cursor == null || !cursor.next()) {
+			return;
+		}
+
+		do {
+			latitude [size] = cursor.getLatitude();
+			longitude[size] = cursor.getLongitude();
+			size++;
+
+			if (size == CHUNK_SIZE) {
+				add(new GeoPolyline(latitude, longitude, size), STROKE);
+
+				latitude [0] = latitude [size - 1];
+				longitude[0] = longitude[size - 1];
+				size = 1;
+			}
+		} while (cursor.next());
+
+		invalidate();
+	}
+
+	@Override
+	protected void draw(GraphicsContext gc, MapViewport viewport) {
+		super.draw(gc, viewport);
+
+		if (size < 2) {
+			return;
+		}
+
+		double mapSize	= MapViewport.getMapSize(viewport.getZoom());
+		double left		= viewport.getCenterX() - viewport.getWidth()  / 2;
+		double top		= viewport.getCenterY() - viewport.getHeight() / 2;
+
+		gc.setStroke(STROKE);
+		gc.beginPath();
+		gc.moveTo(MapViewport.longitudeToPixelX(longitude[0], mapSize) - left, MapViewport.latitudeToPixelY(latitude[0], mapSize) - top);
+
+		for (int i = 1; i < size; i++) {
+			gc.lineTo(MapViewport.longitudeToPixelX(longitude[i], mapSize) - left, MapViewport.latitudeToPixelY(latitude[i], mapSize) - top);
+		}
+
+		gc.stroke();
+	}
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) 2013 Michael Watzko and IT-Designers GmbH.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.itd.maps.mapsforge.examples.fx.route;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Iterator;
+
+import javafx.animation.AnimationTimer;
+
+import de.itd.maps.mapsforge.MapItem;
+
+/**
+ * Records the positions of a {@link MapItem} into a {@link TrackBuffer}
+ * and streams it to a file with a {@link TrackWriter}. The position is
+ * sampled at most every {@link #RECORD_INTERVAL} and only if it has changed,
+ * the file is written at most every {@link #WRITE_INTERVAL}. Stopped
+ * recordings are closed in the background, {@link #shutdown()} waits
+ * at most {@link #CLOSE_TIMEOUT} for them when the application exits.
+ *
+ * All methods need to be called by the FX-Thread.
+ */
+public class RouteRecorder {
+
+	public static final long RECORD_INTERVAL	= 250000000L;	// nanoseconds
+	public static final long WRITE_INTERVAL		= 1000000000L;	// nanoseconds
+	public static final long CLOSE_TIMEOUT		= 2000;			// milliseconds
+
+	private MapItem		item;
+	private TrackBuffer	track;
+	private TrackWriter	writer;
+	private long		lastRecord;
+	private long		lastWrite;
+
+	private final ArrayList<TrackWriter> closing = new ArrayList<TrackWriter>();
+
+	private final AnimationTimer timer = new AnimationTimer() {
+		@Override
+		public void handle(long now) {
+			record(now);
+		}
+	};
+
+	/**
+	 * Starts to record the given {@link MapItem} into a new {@link TrackBuffer},
+	 * a running recording is stopped before
+	 *
+	 * @param item	{@link MapItem} to record
+	 * @param file	File to stream the {@link TrackBuffer} to
+	 * @return The new {@link TrackBuffer}
+	 */
+	public TrackBuffer start (MapItem item, File file) {
+		stop();
+
+		this.writer		= new TrackWriter(file);
+		this.track		= new TrackBuffer();
+		this.item		= item;
+		this.lastRecord	= 0;
+		this.lastWrite	= System.nanoTime();
+
+		track.append(item.latitudeProperty().get(), item.longitudeProperty().get(), System.currentTimeMillis());
+		timer.start();
+
+		return track;
+	}
+
+	/**
+	 * Stops the recording and writes the rest of the {@link TrackBuffer},
+	 * the file is closed in the background
+	 */
+	public void stop () {
+		timer.stop();
+
+		// forget the writers that are closed already
+		for (Iterator<TrackWriter> it = closing.iterator(); it.hasNext(); ) {
+			if (it.next().isClosed()) {
+				it.remove();
+			}
+		}
+
+		if (writer != null) {
+			writer.write(track);
+			writer.close();
+			closing.add(writer);
+			writer	= null;
+			item	= null;
+		}
+	}
+
+	/**
+	 * Stops the recording and waits at most {@link #CLOSE_TIMEOUT} for the
+	 * files to be closed, to be called when the application exits
+	 */
+	public void shutdown () {
+		stop();
+
+		long deadline = System.currentTimeMillis() + CLOSE_TIMEOUT;
+
+		for (TrackWriter closed : closing) {
+			closed.awaitClose(Math.max(0, deadline - System.currentTimeMillis()));
+		}
+		closing.clear();
+	}
+
+	/**
+	 * @return Whether a {@link MapItem} is being recorded
+	 */
+	public boolean isRecording () {
+		return writer != null;
+	}
+
+	/**
+	 * @return The {@link TrackBuffer} of the current or last recording, or null
+	 */
+	public TrackBuffer getTrack () {
+		return track;
+	}
+
+	private void record (long now) {
+		if (now - lastRecord >= RECORD_INTERVAL) {
+			lastRecord = now;
+			track.append(item.latitudeProperty().get(), item.longitudeProperty().get(), System.currentTimeMillis());
+		}
+
+		if (now - lastWrite >= WRITE_INTERVAL) {
+			lastWrite = now;
+			writer.write(track);
+		}
+	}
+}
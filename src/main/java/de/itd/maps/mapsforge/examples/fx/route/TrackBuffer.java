@@ -0,0 +1,226 @@
+/*
+ * Copyright (c) 2013 Michael Watzko and IT-Designers GmbH.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.itd.maps.mapsforge.examples.fx.route;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Append-only track of positions with timestamps, stored compactly.
+ *
+ * Latitude and longitude are stored in microdegrees (about 0.1 m) and
+ * the time in milliseconds. Each point is encoded as difference to the
+ * previous one, zigzag encoded as variable length integer, so a point of
+ * a moving car usually takes 4 to 6 bytes instead of 24.
+ *
+ * Not thread-safe.
+ */
+public class TrackBuffer {
+
+	public static final double MICRODEGREE = 1e6;
+
+	private static final int INITIAL_CAPACITY = 1024;
+
+	private byte[]	data	= new byte[INITIAL_CAPACITY];
+	private int		length;
+	private int		size;
+
+	// the last appended point, the next one is encoded relative to it
+	private int		lastLatitude;
+	private int		lastLongitude;
+	private long	lastTime;
+
+	/**
+	 * Appends the given point, unless it is at the same position
+	 * as the last one after rounding to microdegrees
+	 *
+	 * @param lat	Latitude of the point
+	 * @param lon	Longitude of the point
+	 * @param time	Time of the point in milliseconds
+	 * @return Whether the point was appended
+	 */
+	public boolean append (double lat, double lon, long time) {
+		int latitude	= (int)Math.round(lat * MICRODEGREE);
+		int longitude	= (int)Math.round(lon * MICRODEGREE);
+
+		if (size > 0 && latitude == lastLatitude && longitude == lastLongitude) {
+			return false;
+		}
+
+		ensureCapacity(length + 3 * 10);
+
+		writeVarLong((long)latitude  - lastLatitude);
+		writeVarLong((long)longitude - lastLongitude);
+		writeVarLong(time - lastTime);
+
+		lastLatitude	= latitude;
+		lastLongitude	= longitude;
+		lastTime		= time;
+		size++;
+
+		return true;
+	}
+
+	/**
+	 * @return The amount of points
+	 */
+	public int size () {
+		return size;
+	}
+
+	/**
+	 * @return The amount of bytes the encoded points take
+	 */
+	public int getByteSize () {
+		return length;
+	}
+
+	/**
+	 * @return The latitude of the last point
+	 */
+	public double getLastLatitude () {
+		return lastLatitude / MICRODEGREE;
+	}
+
+	/**
+	 * @return The longitude of the last point
+	 */
+	public double getLastLongitude () {
+		return lastLongitude / MICRODEGREE;
+	}
+
+	/**
+	 * Writes the encoded points from the given offset to the end
+	 *
+	 * @param out		{@link OutputStream} to write to
+	 * @param offset	Offset in bytes to start at, usually the amount of bytes written before
+	 * @return The new offset, the byte size at the time of the call
+	 * @throws IOException
+	 */
+	public int writeTo (OutputStream out, int offset) throws IOException {
+		int end = length;
+		out.write(data, offset, end - offset);
+		return end;
+	}
+
+	/**
+	 * @param offset	Offset in bytes to start at
+	 * @return A copy of the encoded points from the given offset to the end
+	 */
+	public byte[] copyFrom (int offset) {
+		return Arrays.copyOfRange(data, offset, length);
+	}
+
+	/**
+	 * @return A new {@link Cursor} before the first point
+	 */
+	public Cursor cursor () {
+		return new Cursor();
+	}
+
+	private void writeVarLong (long value) {
+		// zigzag, so small negative values take few bytes as well
+		long zigzag = (value << 1) ^ (value >> 63);
+
+		while ((zigzag & ~0x7FL) != 0) {
+			data[length++]	= (byte)((zigzag & 0x7F) | 0x80);
+			zigzag			>>>= 7;
+		}
+
+		data[length++] = (byte)zigzag;
+	}
+
+	private void ensureCapacity (int capacity) {
+		if (data.length < capacity) {
+			data = Arrays.copyOf(data, Math.max(capacity, data.length * 2));
+		}
+	}
+
+	/**
+	 * Reads the points one after another. A {@link Cursor} at the end
+	 * continues with the points that are appended afterwards.
+	 */
+	public class Cursor {
+
+		private int		position;
+		private int		index		= -1;
+		private long	latitude;
+		private long	longitude;
+		private long	time;
+
+		/**
+		 * Moves to the next point
+		 * @return Whether there was a next point
+		 */
+		public boolean next () {
+			if (position >= length) {
+				return false;
+			}
+
+			latitude	+= readVarLong();
+			longitude	+= readVarLong();
+			time		+= readVarLong();
+			index++;
+
+			return true;
+		}
+
+		/**
+		 * @return The index of the current point
+		 */
+		public int getIndex () {
+			return index;
+		}
+
+		/**
+		 * @return The latitude of the current point
+		 */
+		public double getLatitude () {
+			return latitude / MICRODEGREE;
+		}
+
+		/**
+		 * @return The longitude of the current point
+		 */
+		public double getLongitude () {
+			return longitude / MICRODEGREE;
+		}
+
+		/**
+		 * @return The time of the current point in milliseconds
+		 */
+		public long getTime () {
+			return time;
+		}
+
+		private long readVarLong () {
+			long	zigzag	= 0;
+			int		shift	= 0;
+			byte	b;
+
+			do {
+				b		= data[position++];
+				zigzag	|= (long)(b & 0x7F) << shift;
+				shift	+= 7;
+			} while ((b & 0x80) != 0);
+
+			return (zigzag >>> 1) ^ -(zigzag & 1);
+		}
+	}
+}
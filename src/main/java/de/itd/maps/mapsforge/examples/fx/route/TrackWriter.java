@@ -0,0 +1,171 @@
+/*
+ * Copyright (c) 2013 Michael Watzko and IT-Designers GmbH.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.itd.maps.mapsforge.examples.fx.route;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Streams a {@link TrackBuffer} to a file while it grows. Each call of
+ * {@link #write(TrackBuffer)} copies the bytes appended since the last
+ * call and writes them with a background thread, so the caller never
+ * waits for the disk. The file starts with {@link #MAGIC}, followed by
+ * the encoded points as stored by the {@link TrackBuffer}.
+ *
+ * The file is also created and closed by the background thread, failures
+ * are logged. {@link #awaitClose(long)} waits for the file to be closed,
+ * for example when the application exits.
+ */
+public class TrackWriter implements Closeable {
+
+	public static final byte[]	MAGIC			= { 'T', 'R', 'K', '1' };
+
+	private final Logger			logger	= Logger.getLogger(getClass());
+	private final File				file;
+	private final ExecutorService	executor;
+	private OutputStream			out;		// only used by the background thread
+	private int						offset;
+
+	/**
+	 * @param file	File to write to, it is replaced if it exists
+	 */
+	public TrackWriter (File file) {
+		this.file		= file;
+		this.executor	= Executors.newSingleThreadExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, TrackWriter.class.getSimpleName());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+
+		executor.execute(new Runnable() {
+			@Override
+			public void run() {
+				open();
+			}
+		});
+	}
+
+	private void open () {
+		try {
+			out = new BufferedOutputStream(new FileOutputStream(file));
+			out.write(MAGIC);
+		} catch (IOException e) {
+			logger.error("Failed to create "+file, e);
+		}
+	}
+
+	/**
+	 * @return The file written to
+	 */
+	public File getFile () {
+		return file;
+	}
+
+	/**
+	 * Writes the points appended to the given {@link TrackBuffer} since the last
+	 * call, needs to be called by the thread that appends to the {@link TrackBuffer}
+	 *
+	 * @param track	{@link TrackBuffer} to write, always the same one
+	 */
+	public void write (TrackBuffer track) {
+		if (track.getByteSize() == offset) {
+			return;
+		}
+
+		final byte[] bytes	= track.copyFrom(offset);
+		offset				= track.getByteSize();
+
+		executor.execute(new Runnable() {
+			@Override
+			public void run() {
+				if (out == null) {
+					return;
+				}
+				try {
+					out.write(bytes);
+					out.flush();
+				} catch (IOException e) {
+					logger.error("Failed to write the track to "+file, e);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Closes the file after all pending writes without waiting for them,
+	 * see {@link #awaitClose(long)}
+	 */
+	@Override
+	public void close () {
+		executor.execute(new Runnable() {
+			@Override
+			public void run() {
+				if (out == null) {
+					return;
+				}
+				try {
+					out.close();
+				} catch (IOException e) {
+					logger.error("Failed to close "+file, e);
+				}
+			}
+		});
+		executor.shutdown();
+	}
+
+	/**
+	 * Waits for the file to be closed after {@link #close()}, needs to be
+	 * called before the application exits, since the background thread
+	 * does not keep the JVM alive
+	 *
+	 * @param timeout	Time to wait at most in milliseconds
+	 * @return Whether the file has been closed
+	 */
+	public boolean awaitClose (long timeout) {
+		try {
+			if (executor.awaitTermination(timeout, TimeUnit.MILLISECONDS)) {
+				return true;
+			}
+			logger.warn("Timed out while closing "+file);
+		} catch (InterruptedException e) {
+			logger.warn("Interrupted while closing "+file, e);
+			Thread.currentThread().interrupt();
+		}
+		return false;
+	}
+
+	/**
+	 * @return Whether the file has been closed after {@link #close()}
+	 */
+	public boolean isClosed () {
+		return executor.isTerminated();
+	}
+}
@@ -0,0 +1,493 @@
+/*
+ * Copyright (c) 2013 Michael Watzko and IT-Designers GmbH.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.itd.maps.mapsforge.examples.fx.stress;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import javafx.animation.AnimationTimer;
+import javafx.application.Application;
+import javafx.application.Platform;
+import javafx.scene.Group;
+import javafx.scene.Scene;
+import javafx.stage.Stage;
+
+import org.apache.log4j.Logger;
+
+import de.itd.c2x.system.mmi.container.gpsposition.Car;
+import de.itd.maps.mapsforge.MapsforgeMap;
+import de.itd.maps.mapsforge.examples.fx.dispatch.FxDispatcher;
+import de.itd.maps.mapsforge.examples.fx.map.MapItemBatch;
+import de.itd.maps.mapsforge.examples.fx.map.MapItemIndex;
+import de.itd.maps.mapsforge.examples.fx.map.MapUpdateScheduler;
+import de.itd.maps.mapsforge.examples.fx.metrics.HistogramSnapshot;
+import de.itd.maps.mapsforge.examples.fx.metrics.Metrics;
+import de.itd.maps.mapsforge.examples.fx.metrics.MetricsSnapshot;
+import de.itd.maps.mapsforge.examples.fx.movement.MotionModel;
+import de.itd.maps.mapsforge.examples.fx.movement.MovementEngine;
+import de.itd.maps.mapsforge.examples.fx.movement.PositionIngest;
+import de.itd.maps.mapsforge.examples.fx.render.ClusterLayer;
+
+/**
+ * Headless load generator, that moves a configurable amount of {@link Car}s
+ * over a {@link MapsforgeMap} for a fixed duration and writes a JSON report.
+ *
+ * Arguments (all optional):
+ * <pre>
+ *  --items=9999		amount of Cars
+ *  --rate=5			position updates per Car and second
+ *  --pattern=linear	movement pattern: linear, circle or random
+ *  --zoom=15			zoom level of the MapView
+ *  --map=file.map		map file to render
+ *  --duration=60		duration of the measurement in seconds
+ *  --seed=42			seed for the start positions and movements
+ *  --culling=true		whether Cars outside of the viewport are made invisible
+ *  --ingest=false		whether each position is offered as sample to a PositionIngest
+ *  --dispatch=false	whether each position is set by a task of the FxDispatcher, keyed by the Car
+ *  --smooth=false		whether the Cars are interpolated between positions on each pulse
+ *  --clustering=false	whether Cars are grouped into clusters up to zoom level 15
+ *  --report=stress-report.json
+ *  --headless=true		whether to use the Monocle glass platform
+ * </pre>
+ */
+public class StressTest extends Application {
+
+	public static final double	CENTER_LATITUDE		= 48.71;
+	public static final double	CENTER_LONGITUDE	= 9.36;
+	public static final double	SPREAD				= 0.05;
+	public static final double	SPEED				= 0.0005;	// degree per second
+	public static final int		WIDTH				= 1024;
+	public static final int		HEIGHT				= 768;
+	public static final double	FRAME_MILLIS		= 1000d / 60d;
+
+	/**
+	 * Movement patterns of the {@link Car}s
+	 */
+	public enum Pattern {
+		LINEAR,
+		CIRCLE,
+		RANDOM
+	}
+
+	private final Logger logger = Logger.getLogger(getClass());
+
+	// configuration
+	private int			items;
+	private double		rate;
+	private Pattern		pattern;
+	private byte		zoom;
+	private File		mapFile;
+	private long		duration;
+	private long		seed;
+	private boolean		culling;
+	private boolean		ingest;
+	private boolean		dispatch;
+	private boolean		smooth;
+	private boolean		clustering;
+	private File		reportFile;
+
+	// state
+	private MapsforgeMap				map;
+	private MapUpdateScheduler			updateScheduler;
+	private MapItemIndex				mapItemIndex;
+	private MovementEngine				movementEngine;
+	private PositionIngest				positionIngest;
+	private FxDispatcher				dispatcher;
+	private ScheduledExecutorService	generator;
+
+	private Car[]		cars;
+	private int[]		slots;
+	private double[]	baseLatitude;
+	private double[]	baseLongitude;
+	private double[]	directionLatitude;
+	private double[]	directionLongitude;
+	private double[]	latitude;
+	private double[]	longitude;
+	private Random		random;
+	private long		startNanos;
+
+	// measurement, only accessed by the FX-Thread
+	private long[]	frameIntervals	= new long[4096];
+	private int		frameCount;
+	private long	lastFrame;
+	private long	droppedFrames;
+	private long	heapHighWater;
+
+	/**
+	 * Launches the {@link StressTest}, on the headless Monocle
+	 * glass platform unless --headless=false is given
+	 * @param args	Arguments as described by {@link StressTest}
+	 */
+	public static void main (String[] args) {
+		if (!Arrays.asList(args).contains("--headless=false")) {
+			System.setProperty("glass.platform",	"Monocle");
+			System.setProperty("monocle.platform",	"Headless");
+			System.setProperty("prism.order",		"sw");
+			System.setProperty("prism.text",		"t2k");
+		}
+
+		launch(args);
+	}
+
+	@Override
+	public void start (Stage stage) throws Exception {
+		Map<String, String> named = getParameters().getNamed();
+
+		items		= Integer.parseInt	(get(named, "items",	"9999"));
+		rate		= Double.parseDouble(get(named, "rate",		"5"));
+		pattern		= Pattern.valueOf	(get(named, "pattern",	"linear").toUpperCase());
+		zoom		= Byte.parseByte	(get(named, "zoom",		"15"));
+		mapFile		= new File			(get(named, "map",		"maps/stuttgart_with_lanes.map"));
+		duration	= Long.parseLong	(get(named, "duration",	"60"));
+		seed		= Long.parseLong	(get(named, "seed",		"42"));
+		culling		= Boolean.parseBoolean(get(named, "culling", "true"));
+		ingest		= Boolean.parseBoolean(get(named, "ingest",	"false"));
+		dispatch	= Boolean.parseBoolean(get(named, "dispatch", "false"));
+		smooth		= Boolean.parseBoolean(get(named, "smooth",	"false"));
+		clustering	= Boolean.parseBoolean(get(named, "clustering", "false"));
+		reportFile	= new File			(get(named, "report",	"stress-report.json"));
+
+		if (!mapFile.isFile()) {
+			throw new IllegalArgumentException("Map file not found: " + mapFile.getAbsolutePath());
+		}
+
+		logger.info("Stress test with "+items+" Cars, "+rate+" updates/s per Car, pattern="+pattern+", zoom="+zoom+" for "+duration+"s");
+
+
+		map 			= new MapsforgeMap();
+		updateScheduler	= new MapUpdateScheduler(map);
+		mapItemIndex	= new MapItemIndex(map);
+		movementEngine	= new MovementEngine(1000); // nothing moves by itself, positions are posted by the generator
+		positionIngest	= new PositionIngest(movementEngine, items * 2);
+		dispatcher		= FxDispatcher.getInstance();
+
+		if (smooth) {
+			movementEngine.setMotionModel(new MotionModel((long)(1e9 / rate), TimeUnit.SECONDS.toNanos(1)));
+		}
+
+		Group root = new Group(map);
+
+		if (clustering) {
+			root.getChildren().add(new ClusterLayer(map, mapItemIndex));
+		}
+
+		stage.setScene(new Scene(root, WIDTH, HEIGHT));
+		stage.show();
+
+		map.loadMap(mapFile);
+		map.getMapView().setZoomLevel(zoom);
+		map.getMapView().latitudeProperty() .set(CENTER_LATITUDE);
+		map.getMapView().longitudeProperty().set(CENTER_LONGITUDE);
+		map.getMapView().latitudeProperty() .addListener(updateScheduler.getRequestListener());
+		map.getMapView().longitudeProperty().addListener(updateScheduler.getRequestListener());
+
+		createCars();
+
+		updateScheduler.start();
+		updateScheduler.requestUpdate();
+		mapItemIndex.setCulling(culling);
+		mapItemIndex.start();
+		positionIngest .start();	// drains before the engine applies
+		movementEngine .start();
+
+		startNanos = System.nanoTime();
+		startGenerator();
+		startMonitor();
+	}
+
+	private void createCars () {
+		random				= new Random(seed);
+		cars				= new Car	[items];
+		slots				= new int	[items];
+		baseLatitude		= new double[items];
+		baseLongitude		= new double[items];
+		directionLatitude	= new double[items];
+		directionLongitude	= new double[items];
+		latitude			= new double[items];
+		longitude			= new double[items];
+
+		long start = System.nanoTime();
+
+		for (int i = 0; i < items; i++) {
+			double angle			= random.nextDouble() * Math.PI * 2;
+			baseLatitude		[i] = CENTER_LATITUDE  + (random.nextDouble() * 2 - 1) * SPREAD;
+			baseLongitude		[i] = CENTER_LONGITUDE + (random.nextDouble() * 2 - 1) * SPREAD;
+			directionLatitude	[i] = Math.sin(angle);
+			directionLongitude	[i] = Math.cos(angle);
+			latitude			[i] = baseLatitude [i];
+			longitude			[i] = baseLongitude[i];
+
+			cars	[i] = new Car(baseLatitude[i], baseLongitude[i], "i="+i);
+			slots	[i] = positionIngest.register(cars[i]);
+		}
+
+		// called by the FX-Thread, so the cars are added right away
+		new MapItemBatch(map, mapItemIndex).addAll(Arrays.asList(cars));
+
+		logger.debug("All Cars added after "+(System.nanoTime() - start) / 1000000+" ms");
+	}
+
+	private void startGenerator () {
+		generator = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "StressTest-Generator");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+
+		generator.scheduleAtFixedRate(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					generate((System.nanoTime() - startNanos) / 1e9);
+				} catch (Throwable t) {
+					logger.error("Failed to generate positions", t);
+				}
+			}
+		}, 0, (long)(1e9 / rate), TimeUnit.NANOSECONDS);
+	}
+
+	private void generate (double seconds) {
+		double step = SPEED / rate;
+
+		for (int i = 0; i < items; i++) {
+			switch (pattern) {
+				case LINEAR:
+					latitude [i] = baseLatitude [i] + directionLatitude [i] * SPEED * seconds;
+					longitude[i] = baseLongitude[i] + directionLongitude[i] * SPEED * seconds;
+					break;
+
+				case CIRCLE:
+					// one round every 60 seconds
+					double angle = seconds * Math.PI * 2 / 60 + Math.atan2(directionLatitude[i], directionLongitude[i]);
+					latitude [i] = baseLatitude [i] + Math.sin(angle) * SPEED * 10;
+					longitude[i] = baseLongitude[i] + Math.cos(angle) * SPEED * 10;
+					break;
+
+				case RANDOM:
+					latitude [i] += (random.nextDouble() * 2 - 1) * step;
+					longitude[i] += (random.nextDouble() * 2 - 1) * step;
+					break;
+			}
+		}
+
+		if (dispatch) {
+			for (int i = 0; i < items; i++) {
+				final Car		car	= cars[i];
+				final double	lat	= latitude [i];
+				final double	lon	= longitude[i];
+
+				// replaces the update of the same Car, if it is still pending
+				dispatcher.dispatch(car.getID(), new Runnable() {
+					@Override
+					public void run() {
+						car.latitudeProperty() .set(lat);
+						car.longitudeProperty().set(lon);
+					}
+				});
+			}
+
+		} else if (ingest) {
+			long timestamp = System.nanoTime();
+
+			for (int i = 0; i < items; i++) {
+				positionIngest.offer(slots[i], latitude[i], longitude[i], Double.NaN, timestamp);
+			}
+
+		} else {
+			movementEngine.postAll(slots, latitude, longitude, items);
+		}
+	}
+
+	private void startMonitor () {
+		final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+
+		new AnimationTimer() {
+			@Override
+			public void handle(long now) {
+				if (lastFrame != 0) {
+					long interval = now - lastFrame;
+
+					if (frameCount == frameIntervals.length) {
+						frameIntervals = Arrays.copyOf(frameIntervals, frameCount * 2);
+					}
+					frameIntervals[frameCount++] = interval;
+
+					double frames = (interval / 1e6) / FRAME_MILLIS;
+					if (frames >= 1.5) {
+						droppedFrames += Math.round(frames) - 1;
+					}
+				}
+				lastFrame = now;
+
+				heapHighWater = Math.max(heapHighWater, memory.getHeapMemoryUsage().getUsed());
+
+				if (now - startNanos >= TimeUnit.SECONDS.toNanos(duration)) {
+					stop();
+					finish();
+				}
+			}
+		}.start();
+	}
+
+	private void finish () {
+		generator		.shutdownNow();
+		positionIngest	.stop();
+		movementEngine	.stop();
+		updateScheduler	.stop();
+		mapItemIndex	.stop();
+
+		try {
+			writeReport();
+			logger.info("Report written to "+reportFile.getAbsolutePath());
+		} catch (IOException e) {
+			logger.error("Failed to write the report", e);
+		} finally {
+			map.destroy();
+			Platform.exit();
+		}
+	}
+
+	private void writeReport () throws IOException {
+		double			seconds		= (System.nanoTime() - startNanos) / 1e9;
+		long[]			intervals	= Arrays.copyOf(frameIntervals, frameCount);
+		MetricsSnapshot	metrics		= Metrics.getInstance().snapshot();
+		Arrays.sort(intervals);
+
+		StringBuilder json = new StringBuilder();
+		json.append("{\n");
+		json.append("  \"items\": ")						.append(items)												.append(",\n");
+		json.append("  \"rate\": ")							.append(rate)												.append(",\n");
+		json.append("  \"pattern\": ")						.append(toJson(pattern.name().toLowerCase()))				.append(",\n");
+		json.append("  \"zoom\": ")							.append(zoom)												.append(",\n");
+		json.append("  \"map\": ")							.append(toJson(mapFile.getName()))							.append(",\n");
+		json.append("  \"seed\": ")							.append(seed)												.append(",\n");
+		json.append("  \"culling\": ")						.append(culling)											.append(",\n");
+		json.append("  \"durationSeconds\": ")				.append(seconds)											.append(",\n");
+		json.append("  \"smooth\": ")						.append(smooth)												.append(",\n");
+		json.append("  \"clustering\": ")					.append(clustering)											.append(",\n");
+		json.append("  \"ingest\": ")						.append(ingest)												.append(",\n");
+		json.append("  \"dispatch\": ")						.append(dispatch)											.append(",\n");
+		json.append("  \"coalescedDispatches\": ")			.append(metrics.getCounter(Metrics.FX_DISPATCH_COALESCED))	.append(",\n");
+		json.append("  \"droppedSamples\": ")				.append(positionIngest.getDroppedCount())					.append(",\n");
+		json.append("  \"staleSamples\": ")				.append(positionIngest.getStaleCount())						.append(",\n");
+		json.append("  \"postedUpdates\": ")				.append(movementEngine.getPostedCount())					.append(",\n");
+		json.append("  \"appliedUpdates\": ")				.append(movementEngine.getAppliedCount())					.append(",\n");
+		json.append("  \"achievedUpdatesPerSecond\": ")		.append(movementEngine.getAppliedCount() / seconds)			.append(",\n");
+		json.append("  \"frames\": ")						.append(frameCount)											.append(",\n");
+		json.append("  \"droppedFrames\": ")				.append(droppedFrames)										.append(",\n");
+		json.append("  \"pulseIntervalMillis\": {")
+			.append("\"p50\": ")	.append(percentile(intervals, 0.50) / 1e6)
+			.append(", \"p90\": ")	.append(percentile(intervals, 0.90) / 1e6)
+			.append(", \"p99\": ")	.append(percentile(intervals, 0.99) / 1e6)
+			.append(", \"max\": ")	.append(percentile(intervals, 1.00) / 1e6)									.append("},\n");
+		json.append("  \"visibleItems\": ")					.append(mapItemIndex.getVisibleCount())						.append(",\n");
+		json.append("  \"mapUpdates\": ")					.append(updateScheduler.getUpdateCount())					.append(",\n");
+		json.append("  \"coalescedMapUpdates\": ")			.append(updateScheduler.getCoalescedCount())				.append(",\n");
+		json.append("  \"tileCacheTileCount\": ")			.append(map.memoryTileCacheTileCount().intValue())			.append(",\n");
+		json.append("  \"tileCacheCapacity\": ")			.append(map.memoryTileCacheCapacity().get())				.append(",\n");
+		// MapsforgeMap does not expose cache hits and misses
+		json.append("  \"tileCacheHitRatio\": null,\n");
+		json.append("  \"heapHighWaterBytes\": ")			.append(heapHighWater)										.append(",\n");
+		json.append("  \"mapUpdateMillis\": ")				.append(toJson(metrics.getHistogram(Metrics.MAP_UPDATE)))	.append(",\n");
+		json.append("  \"dispatchWaitMillis\": ")			.append(toJson(metrics.getHistogram(Metrics.FX_DISPATCH_WAIT)))	.append(",\n");
+		json.append("  \"gcPauseMillis\": ")				.append(toJson(metrics.getHistogram(Metrics.GC_PAUSE)))		.append("\n");
+		json.append("}\n");
+
+		Writer writer = new OutputStreamWriter(new FileOutputStream(reportFile), Charset.forName("UTF-8"));
+		try {
+			writer.write(json.toString());
+		} finally {
+			writer.close();
+		}
+	}
+
+	/**
+	 * @param histogram	{@link HistogramSnapshot} of durations in nanoseconds
+	 * @return The count and the percentiles in milliseconds as JSON object
+	 */
+	private static String toJson (HistogramSnapshot histogram) {
+		return "{\"count\": "	+ histogram.getCount()
+			+ ", \"p50\": "		+ histogram.getPercentile(0.50)	/ 1e6
+			+ ", \"p99\": "		+ histogram.getPercentile(0.99)	/ 1e6
+			+ ", \"max\": "		+ histogram.getMax()			/ 1e6
+			+ "}";
+	}
+
+	/**
+	 * @param value	String to quote
+	 * @return The given string as JSON string, with quotes, backslashes
+	 * 			and control characters escaped
+	 */
+	private static String toJson (String value) {
+		StringBuilder json = new StringBuilder(value.length() + 2).append('"');
+
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+
+			switch (c) {
+				case '"':	json.append("\\\"");	break;
+				case '\\':	json.append("\\\\");	break;
+				case '\n':	json.append("\\n");	break;
+				case '\r':	json.append("\\r");	break;
+				case '\t':	json.append("\\t");	break;
+				default:
+					if (c < 0x20) {
+						json.append(String.format("\\u%04x", (int)c));
+					} else {
+						json.append(c);
+					}
+			}
+		}
+
+		return json.append('"').toString();
+	}
+
+	/**
+	 * @param sorted	Sorted values
+	 * @param quantile	Quantile between 0 and 1
+	 * @return The value at the given quantile or 0 if there are no values
+	 */
+	private static long percentile (long[] sorted, double quantile) {
+		if (sorted.length == 0) {
+			return 0;
+		}
+		int index = (int)Math.ceil(quantile * sorted.length) - 1;
+		return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+	}
+
+	private static String get (Map<String, String> named, String key, String defaultValue) {
+		String value = named.get(key);
+		return value != null ? value : defaultValue;
+	}
+}